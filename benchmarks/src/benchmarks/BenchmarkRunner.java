@@ -0,0 +1,29 @@
+package benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks matching the given pattern once per thread count, writing each run's results to
+ * jmh-N-threads.json so that runs can be compared for regressions.
+ * Usage: BenchmarkRunner [pattern] [threadCounts, comma separated]
+ * Group benchmarks, such as the request collapsing one, round the thread count up to whole groups.
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException {
+        final String pattern = args.length > 0 ? args[0] : "benchmarks\\..*";
+        final String threadCounts = args.length > 1 ? args[1] : "1,4,16";
+        for (final String threads : threadCounts.split(",")) {
+            final Options options = new OptionsBuilder()
+                    .include(pattern)
+                    .threads(Integer.parseInt(threads.trim()))
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("jmh-" + threads.trim() + "-threads.json")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
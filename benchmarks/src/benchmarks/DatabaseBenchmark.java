@@ -0,0 +1,77 @@
+package benchmarks;
+
+import database.Database;
+import database.LatencyModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips through the database's request queue and its dispatcher, which batches and completes pending
+ * calls. The database answers without latency, so each call is completed in the dispatcher pass that drains it,
+ * without waiting on the timing wheel, and the numbers are the cost of queueing, waking the dispatcher up and
+ * completion.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseBenchmark {
+    private static final int KEYS = 10_000;
+
+    @Param({"1", "5", "100"})
+    int batchThreshold;
+
+    @Param({"16"})
+    int bulkSize;
+
+    private Database database;
+    private String[] keys;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        database = new Database(batchThreshold, 0, LatencyModel.fixed(Duration.ZERO), Database.UNBOUNDED_WORKERS);
+        keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "key-" + i;
+            database.set(keys[i], "value-" + i).get();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @State(Scope.Thread)
+    public static class Requests {
+        private final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Benchmark
+    public String get(Requests requests) throws Exception {
+        return database.get(keys[requests.random.nextInt(KEYS)]).get();
+    }
+
+    @Benchmark
+    public Object set(Requests requests) throws Exception {
+        final int index = requests.random.nextInt(KEYS);
+        return database.set(keys[index], "value-" + index).get();
+    }
+
+    @Benchmark
+    public Map<String, String> getAll(Requests requests) throws Exception {
+        final List<String> batch = new ArrayList<>(bulkSize);
+        for (int i = 0; i < bulkSize; i++) {
+            batch.add(keys[requests.random.nextInt(KEYS)]);
+        }
+        return database.getAll(batch).get();
+    }
+}
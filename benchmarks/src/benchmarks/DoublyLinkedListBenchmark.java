@@ -0,0 +1,52 @@
+package benchmarks;
+
+import models.DoublyLinkedList;
+import models.Node;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The recency list operations LRUCache performs under its lock: moving a hit to the head, and evicting the
+ * tail to insert a new node.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DoublyLinkedListBenchmark {
+    @Param({"1000", "100000"})
+    int size;
+
+    private DoublyLinkedList list;
+    private Node[] nodes;
+    private final SplittableRandom random = new SplittableRandom();
+    private long inserted;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        list = new DoublyLinkedList();
+        nodes = new Node[size];
+        for (int i = 0; i < size; i++) {
+            nodes[i] = new Node("key-" + i, null);
+            list.updateHead(nodes[i]);
+        }
+    }
+
+    @Benchmark
+    public void moveToHead() {
+        final Node node = nodes[random.nextInt(size)];
+        list.delete(node);
+        list.updateHead(node);
+    }
+
+    @Benchmark
+    public Node evictAndInsert() {
+        final Node evicted = list.evict();
+        list.updateHead(new Node("inserted-" + inserted++, null));
+        return evicted;
+    }
+}
@@ -0,0 +1,105 @@
+package benchmarks;
+
+import cache.implementations.LRUCache;
+import database.Database;
+import database.LatencyModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gets and puts against an LRUCache over a database that answers without latency, so that the numbers are the
+ * cost of the cache and the database's queueing rather than of simulated waits. Misses and puts still hand each
+ * call to the database's dispatcher thread, which completes it as soon as it is woken up.
+ * Hits read keys the setup loaded, misses read keys no one has loaded, and the mixed benchmark writes with the
+ * given ratio over the loaded keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LRUCacheBenchmark {
+    @Param({"1000", "100000"})
+    int cacheSize;
+
+    @Param({"false", "true"})
+    boolean nonBlocking;
+
+    private LRUCache cache;
+    private String[] keys;
+    private final AtomicLong misses = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        final Database database = new Database(100, 0, LatencyModel.fixed(Duration.ZERO), Database.UNBOUNDED_WORKERS);
+        cache = LRUCache.builder("LRU", cacheSize, database)
+                .dbThreadPool(Runtime.getRuntime().availableProcessors())
+                .requestCollapsing(true)
+                .nonBlocking(nonBlocking)
+                .build();
+        keys = new String[cacheSize];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "key-" + i;
+            cache.put(keys[i], "value-" + i).get();
+            cache.get(keys[i]).get();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cache.shutdown();
+    }
+
+    @State(Scope.Thread)
+    public static class Requests {
+        private final SplittableRandom random = new SplittableRandom();
+
+        int nextIndex(int bound) {
+            return random.nextInt(bound);
+        }
+
+        boolean nextIsWrite(double writeRatio) {
+            return random.nextDouble() < writeRatio;
+        }
+    }
+
+    /**
+     * Only the mixed benchmark varies by write ratio.
+     */
+    @State(Scope.Benchmark)
+    public static class Mix {
+        @Param({"0.0", "0.1", "0.5"})
+        double writeRatio;
+    }
+
+    @Benchmark
+    public String getHit(Requests requests) throws Exception {
+        return cache.get(keys[requests.nextIndex(keys.length)]).get();
+    }
+
+    @Benchmark
+    public String getMiss() throws Exception {
+        // Fresh keys on every call, which fill the cache with entries evicting each other
+        return cache.get("miss-" + misses.incrementAndGet()).get();
+    }
+
+    @Benchmark
+    public Object put(Requests requests) throws Exception {
+        final int index = requests.nextIndex(keys.length);
+        return cache.put(keys[index], "value-" + index).get();
+    }
+
+    @Benchmark
+    public Object mixed(Requests requests, Mix mix) throws Exception {
+        final int index = requests.nextIndex(keys.length);
+        if (requests.nextIsWrite(mix.writeRatio)) {
+            return cache.put(keys[index], "value-" + index).get();
+        }
+        return cache.get(keys[index]).get();
+    }
+}
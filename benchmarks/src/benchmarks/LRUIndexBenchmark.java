@@ -0,0 +1,96 @@
+package benchmarks;
+
+import models.ArrayLRUMap;
+import models.DoublyLinkedList;
+import models.Node;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the index LRUCache keeps, a HashMap of Nodes linked into a DoublyLinkedList, with ArrayLRUMap, on one
+ * thread as both are guarded by a lock in their caches. Keys are drawn uniformly from a key space sized so that
+ * the given share of accesses hit, and misses insert and evict as a load would.
+ * Run with -prof gc to compare the allocation per operation as well.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LRUIndexBenchmark {
+    @Param({"1000", "100000"})
+    int capacity;
+
+    @Param({"0.5", "0.9"})
+    double hitRatio;
+
+    private String[] keys;
+    private List<Future<String>> values;
+    private final SplittableRandom random = new SplittableRandom();
+
+    private Map<String, Node> store;
+    private DoublyLinkedList list;
+    private ArrayLRUMap<Future<String>> map;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        keys = new String[(int) (capacity / hitRatio)];
+        values = new ArrayList<>(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "key-" + i;
+            values.add(CompletableFuture.completedFuture("value-" + i));
+        }
+        store = new HashMap<>();
+        list = new DoublyLinkedList();
+        map = new ArrayLRUMap<>(capacity);
+        // Start both full, so that every iteration measures the steady state
+        for (int i = 0; i < keys.length; i++) {
+            nodeAccess(i);
+            map.put(keys[i], values.get(i));
+        }
+    }
+
+    @Benchmark
+    public Future<String> nodeIndex() {
+        return nodeAccess(random.nextInt(keys.length));
+    }
+
+    @Benchmark
+    public Future<String> arrayIndex() {
+        final int index = random.nextInt(keys.length);
+        final Future<String> value = map.get(keys[index]);
+        if (value != null) {
+            return value;
+        }
+        final Future<String> loaded = values.get(index);
+        map.put(keys[index], loaded);
+        return loaded;
+    }
+
+    private Future<String> nodeAccess(int index) {
+        final String key = keys[index];
+        Node node = store.get(key);
+        if (node != null) {
+            list.delete(node);
+            list.updateHead(node);
+            return node.value;
+        }
+        if (store.size() >= capacity) {
+            store.remove(list.evict().key);
+        }
+        // As LRUCache.add does on every load
+        node = new Node(key, values.get(index));
+        list.updateHead(node);
+        store.put(key, node);
+        return node.value;
+    }
+}
@@ -0,0 +1,72 @@
+package benchmarks;
+
+import cache.implementations.LRUCache;
+import database.Database;
+import database.LatencyModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Readers hammering a few hot keys while a writer keeps invalidating them, so that most reads find a load in
+ * flight. With request collapsing the readers share those loads, without it every read waits its turn.
+ */
+@State(Scope.Group)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestCollapsingBenchmark {
+    private static final int HOT_KEYS = 8;
+
+    @Param({"false", "true"})
+    boolean requestCollapsing;
+
+    @Param({"false", "true"})
+    boolean nonBlocking;
+
+    private LRUCache cache;
+    private final String[] keys = new String[HOT_KEYS];
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        final Database database = new Database(5, 0, LatencyModel.fixed(Duration.ofMillis(1)), Database.UNBOUNDED_WORKERS);
+        cache = LRUCache.builder("LRU", 1000, database)
+                .dbThreadPool(HOT_KEYS)
+                .requestCollapsing(requestCollapsing)
+                .nonBlocking(nonBlocking)
+                .build();
+        for (int i = 0; i < HOT_KEYS; i++) {
+            keys[i] = "hot-" + i;
+            cache.put(keys[i], "value-" + i).get();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cache.shutdown();
+    }
+
+    @State(Scope.Thread)
+    public static class Requests {
+        private final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Benchmark
+    @Group("hotKeys")
+    @GroupThreads(7)
+    public String read(Requests requests) throws Exception {
+        return cache.get(keys[requests.random.nextInt(HOT_KEYS)]).get();
+    }
+
+    @Benchmark
+    @Group("hotKeys")
+    @GroupThreads(1)
+    public Object write(Requests requests) throws Exception {
+        final int index = requests.random.nextInt(HOT_KEYS);
+        return cache.put(keys[index], "value-" + index).get();
+    }
+}
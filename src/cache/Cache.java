@@ -3,6 +3,12 @@ package cache;
 import database.Database;
 import database.DatabaseInterface;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
 public abstract class Cache implements CacheInterface {
@@ -21,4 +27,58 @@ public abstract class Cache implements CacheInterface {
 
     @Override
     public abstract Future<Void> put(String key, String value);
+
+    /**
+     * Reads the keys one at a time. Caches that can load their misses in one database call override this.
+     */
+    @Override
+    public Future<Map<String, String>> getAll(Collection<String> keys) {
+        final Map<String, CompletableFuture<String>> results = new LinkedHashMap<>();
+        for (final String key : keys) {
+            results.computeIfAbsent(key, k -> toCompletableFuture(get(k)));
+        }
+        return collect(results);
+    }
+
+    /**
+     * Writes the entries one at a time. Caches that can write them in one database call override this.
+     */
+    @Override
+    public Future<Void> putAll(Map<String, String> entries) {
+        final CompletableFuture<?>[] writes = new CompletableFuture<?>[entries.size()];
+        int i = 0;
+        for (final Map.Entry<String, String> entry : entries.entrySet()) {
+            writes[i++] = toCompletableFuture(put(entry.getKey(), entry.getValue()));
+        }
+        return CompletableFuture.allOf(writes);
+    }
+
+    /**
+     * Completes once every value has arrived, with the values in the order of the keys.
+     */
+    protected static CompletableFuture<Map<String, String>> collect(Map<String, CompletableFuture<String>> results) {
+        return CompletableFuture.allOf(results.values().toArray(new CompletableFuture<?>[0]))
+                .thenApply(__ -> {
+                    final Map<String, String> values = new LinkedHashMap<>();
+                    results.forEach((key, result) -> values.put(key, result.join()));
+                    return values;
+                });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> CompletableFuture<T> toCompletableFuture(Future<T> future) {
+        if (future instanceof CompletableFuture) {
+            return (CompletableFuture<T>) future;
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            } catch (ExecutionException e) {
+                throw new CompletionException(e.getCause());
+            }
+        });
+    }
 }
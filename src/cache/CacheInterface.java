@@ -1,8 +1,30 @@
 package cache;
 
+import models.MetricsSnapshot;
+
+import java.util.Collection;
+import java.util.Map;
 import java.util.concurrent.Future;
 
 public interface CacheInterface {
     Future<String> get(String key);
     Future<Void> put(String key, String value);
+
+    /**
+     * Reads all the keys, failing if any of them cannot be read.
+     */
+    Future<Map<String, String>> getAll(Collection<String> keys);
+
+    /**
+     * Writes all the entries, failing if any of them cannot be written.
+     */
+    Future<Void> putAll(Map<String, String> entries);
+    String getName();
+    String getStats();
+
+    /**
+     * Returns the counters and latencies of the cache and of what it is built on, for export.
+     */
+    MetricsSnapshot getMetrics();
+    void shutdown();
 }
@@ -0,0 +1,60 @@
+package cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The kind of threads that run cache and tester tasks.
+ * Executors are always single threaded per stripe, so tasks for the same key keep running in submission order
+ * whichever model is used.
+ */
+public enum ExecutionModel {
+    PLATFORM_THREADS,
+    VIRTUAL_THREADS;
+
+    // Resolved reflectively so that the project still compiles and runs on JDKs without virtual threads
+    private static final ThreadFactory VIRTUAL_THREAD_FACTORY = createVirtualThreadFactory();
+
+    public boolean isSupported() {
+        return this == PLATFORM_THREADS || VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    public ThreadFactory threadFactory() {
+        if (this == PLATFORM_THREADS) {
+            return Executors.defaultThreadFactory();
+        }
+        if (VIRTUAL_THREAD_FACTORY == null) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or later");
+        }
+        return VIRTUAL_THREAD_FACTORY;
+    }
+
+    /**
+     * Creates an executor that runs one task at a time, in submission order.
+     */
+    public ExecutorService newSerialExecutor() {
+        return Executors.newSingleThreadExecutor(threadFactory());
+    }
+
+    public static List<ExecutionModel> supported() {
+        final List<ExecutionModel> models = new ArrayList<>();
+        for (final ExecutionModel model : values()) {
+            if (model.isSupported()) {
+                models.add(model);
+            }
+        }
+        return models;
+    }
+
+    private static ThreadFactory createVirtualThreadFactory() {
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
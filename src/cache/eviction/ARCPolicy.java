@@ -0,0 +1,114 @@
+package cache.eviction;
+
+import models.DoublyLinkedList;
+import models.Node;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Adaptive Replacement Cache.
+ * Entries seen once live in T1 and entries seen more than once in T2. Keys evicted from each list are remembered
+ * in the ghost lists B1 and B2, and a miss on a ghost key shifts the target size of T1 towards whichever list
+ * would have kept it, so the policy adapts between recency and frequency as the workload changes.
+ */
+public class ARCPolicy implements EvictionPolicy {
+    private static final int T1 = 0, T2 = 1;
+
+    private final int size;
+    private final DoublyLinkedList t1 = new DoublyLinkedList(),
+            t2 = new DoublyLinkedList();
+    private final Set<String> b1 = new LinkedHashSet<>(),
+            b2 = new LinkedHashSet<>();
+    // Target size of T1
+    private int p;
+    // The ghost key the cache is adding, and whether it was found in B2, from onMiss until onInsert
+    private String ghostHit;
+    private boolean ghostHitInB2;
+
+    public ARCPolicy(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Adapts the target size of T1 on a ghost hit, before the victim that makes room for the key is chosen.
+     */
+    @Override
+    public void onMiss(String key) {
+        ghostHit = null;
+        if (b1.contains(key)) {
+            p = Math.min(size, p + Math.max(b2.size() / Math.max(b1.size(), 1), 1));
+            b1.remove(key);
+            ghostHit = key;
+            ghostHitInB2 = false;
+        } else if (b2.contains(key)) {
+            p = Math.max(0, p - Math.max(b1.size() / Math.max(b2.size(), 1), 1));
+            b2.remove(key);
+            ghostHit = key;
+            ghostHitInB2 = true;
+        }
+    }
+
+    @Override
+    public void onInsert(Node node) {
+        // Keys seen before their ghost was forgotten have been seen twice
+        if (node.key.equals(ghostHit)) {
+            node.region = T2;
+            t2.updateHead(node);
+        } else {
+            node.region = T1;
+            t1.updateHead(node);
+        }
+        ghostHit = null;
+    }
+
+    @Override
+    public void onAccess(Node node) {
+        getList(node).delete(node);
+        node.region = T2;
+        t2.updateHead(node);
+    }
+
+    @Override
+    public void onRemove(Node node) {
+        getList(node).delete(node);
+    }
+
+    @Override
+    public Node evict() {
+        if (t1.size() == 0 && t2.size() == 0) {
+            return null;
+        }
+        final Node victim;
+        // A hit in B2 asks for a smaller T1, so T1 gives up an entry at its target size too
+        final boolean b2Hit = ghostHit != null && ghostHitInB2;
+        if (t1.size() > 0 && (t1.size() > p || (b2Hit && t1.size() == p) || t2.size() == 0)) {
+            victim = t1.evict();
+            b1.add(victim.key);
+        } else {
+            victim = t2.evict();
+            b2.add(victim.key);
+        }
+        // The ghost lists remember at most as many keys as the cache holds
+        if (t1.size() + b1.size() > size) {
+            removeEldest(b1);
+        }
+        while (t1.size() + t2.size() + b1.size() + b2.size() > 2 * size && !b2.isEmpty()) {
+            removeEldest(b2);
+        }
+        return victim;
+    }
+
+    private DoublyLinkedList getList(Node node) {
+        return node.region == T1 ? t1 : t2;
+    }
+
+    private void removeEldest(Set<String> ghosts) {
+        final Iterator<String> iterator = ghosts.iterator();
+        if (iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package cache.eviction;
+
+import models.DoublyLinkedList;
+import models.Node;
+
+/**
+ * Approximates LRU with the CLOCK algorithm.
+ * A hit only sets the node's reference bit and never relinks it, so hits need no lock. To evict, a hand sweeps
+ * from the oldest entry towards the newest, clearing reference bits until it finds an unreferenced node.
+ */
+public class ClockPolicy implements EvictionPolicy {
+    private final DoublyLinkedList doublyLinkedList = new DoublyLinkedList();
+    private Node hand;
+
+    @Override
+    public void onInsert(Node node) {
+        node.referenced = false;
+        doublyLinkedList.updateHead(node);
+    }
+
+    @Override
+    public void onAccess(Node node) {
+        node.referenced = true;
+    }
+
+    @Override
+    public void onRemove(Node node) {
+        if (hand == node) {
+            hand = node.prev;
+        }
+        doublyLinkedList.delete(node);
+    }
+
+    @Override
+    public Node evict() {
+        if (doublyLinkedList.getTail() == null) {
+            return null;
+        }
+        while (true) {
+            if (hand == null) {
+                hand = doublyLinkedList.getTail();
+            }
+            final Node current = hand;
+            hand = current.prev;
+            if (current.referenced) {
+                current.referenced = false;
+            } else {
+                doublyLinkedList.delete(current);
+                return current;
+            }
+        }
+    }
+
+    @Override
+    public boolean isAccessLockFree() {
+        return true;
+    }
+}
@@ -0,0 +1,44 @@
+package cache.eviction;
+
+import models.Node;
+
+/**
+ * Decides which cached entry to drop when the cache is full.
+ * The cache calls these methods while holding its lock, except for {@link #onAccess(Node)} when
+ * {@link #isAccessLockFree()} is true.
+ */
+public interface EvictionPolicy {
+    /**
+     * Called before a key that is not cached is added, ahead of any eviction made to fit it, so that the policy
+     * can use its history of the key to choose the victim.
+     */
+    default void onMiss(String key) {
+    }
+
+    /**
+     * Starts tracking a node that was just added to the cache.
+     */
+    void onInsert(Node node);
+
+    /**
+     * Records a cache hit on a tracked node.
+     */
+    void onAccess(Node node);
+
+    /**
+     * Stops tracking a node that was removed from the cache without being evicted.
+     */
+    void onRemove(Node node);
+
+    /**
+     * Chooses a victim among the tracked nodes and stops tracking it, or returns null if no node is tracked.
+     */
+    Node evict();
+
+    /**
+     * Whether hits can be recorded concurrently with each other and with the other operations.
+     */
+    default boolean isAccessLockFree() {
+        return false;
+    }
+}
@@ -0,0 +1,32 @@
+package cache.eviction;
+
+import models.DoublyLinkedList;
+import models.Node;
+
+/**
+ * Evicts the least recently used entry. Every hit relinks the node to the head of the list.
+ */
+public class LRUPolicy implements EvictionPolicy {
+    private final DoublyLinkedList doublyLinkedList = new DoublyLinkedList();
+
+    @Override
+    public void onInsert(Node node) {
+        doublyLinkedList.updateHead(node);
+    }
+
+    @Override
+    public void onAccess(Node node) {
+        doublyLinkedList.delete(node);
+        doublyLinkedList.updateHead(node);
+    }
+
+    @Override
+    public void onRemove(Node node) {
+        doublyLinkedList.delete(node);
+    }
+
+    @Override
+    public Node evict() {
+        return doublyLinkedList.getTail() != null ? doublyLinkedList.evict() : null;
+    }
+}
@@ -0,0 +1,57 @@
+package cache.eviction;
+
+import models.DoublyLinkedList;
+import models.Node;
+
+/**
+ * Segmented LRU: new entries start in a probation segment and are promoted to a protected segment when hit.
+ * Overflow from the protected segment is demoted back to probation, and victims are taken from probation first,
+ * so entries that were only seen once are evicted before entries that proved to be reused.
+ */
+public class SLRUPolicy implements EvictionPolicy {
+    private static final int PROBATION = 0, PROTECTED = 1;
+
+    private final int protectedMaximum;
+    private final DoublyLinkedList probation = new DoublyLinkedList(),
+            protectedList = new DoublyLinkedList();
+
+    public SLRUPolicy(int size) {
+        this.protectedMaximum = size * 4 / 5;
+    }
+
+    @Override
+    public void onInsert(Node node) {
+        node.region = PROBATION;
+        probation.updateHead(node);
+    }
+
+    @Override
+    public void onAccess(Node node) {
+        if (node.region == PROTECTED) {
+            protectedList.delete(node);
+            protectedList.updateHead(node);
+            return;
+        }
+        probation.delete(node);
+        node.region = PROTECTED;
+        protectedList.updateHead(node);
+        if (protectedList.size() > protectedMaximum) {
+            final Node demoted = protectedList.evict();
+            demoted.region = PROBATION;
+            probation.updateHead(demoted);
+        }
+    }
+
+    @Override
+    public void onRemove(Node node) {
+        (node.region == PROTECTED ? protectedList : probation).delete(node);
+    }
+
+    @Override
+    public Node evict() {
+        if (probation.size() > 0) {
+            return probation.evict();
+        }
+        return protectedList.size() > 0 ? protectedList.evict() : null;
+    }
+}
@@ -0,0 +1,19 @@
+package cache.eviction;
+
+/**
+ * Estimates the weight of a cache entry, for caches bounded by total weight instead of entry count.
+ */
+@FunctionalInterface
+public interface Weigher {
+    // Headers and fields of the node, the two strings and their arrays, and the index's table entry
+    int ENTRY_OVERHEAD = 128;
+
+    int weigh(String key, String value);
+
+    /**
+     * Estimates the bytes an entry holds on the heap, at two bytes per character.
+     */
+    static Weigher entryBytes() {
+        return (key, value) -> ENTRY_OVERHEAD + 2 * (key.length() + (value == null ? 0 : value.length()));
+    }
+}
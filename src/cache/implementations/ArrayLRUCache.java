@@ -0,0 +1,68 @@
+package cache.implementations;
+
+import cache.ExecutionModel;
+import database.DatabaseInterface;
+import models.ArrayLRUMap;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An LRU cache over a preallocated, array-backed map, so that hits and evictions allocate nothing.
+ * Hits hand back the future that was cached with the entry instead of wrapping the value again.
+ */
+public class ArrayLRUCache extends StripedCache {
+    private final ArrayLRUMap<Future<String>> map;
+    private final Lock lock = new ReentrantLock();
+
+    public ArrayLRUCache(String name,
+                         int size,
+                         int dbThreadPool,
+                         boolean requestCollapsing,
+                         DatabaseInterface database) {
+        this(name, size, dbThreadPool, requestCollapsing, ExecutionModel.PLATFORM_THREADS, database);
+    }
+
+    public ArrayLRUCache(String name,
+                         int size,
+                         int dbThreadPool,
+                         boolean requestCollapsing,
+                         ExecutionModel executionModel,
+                         DatabaseInterface database) {
+        super(name, dbThreadPool, requestCollapsing, executionModel, database);
+        this.map = new ArrayLRUMap<>(size);
+    }
+
+    @Override
+    protected Future<String> lookup(String key) {
+        lock.lock();
+        try {
+            return map.get(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected void insert(String key, Future<String> value) {
+        lock.lock();
+        try {
+            if (map.put(key, value) != null) {
+                statistics.evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected void invalidate(String key) {
+        lock.lock();
+        try {
+            map.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package cache.implementations;
+
+import cache.ExecutionModel;
+import database.DatabaseInterface;
+import models.DoublyLinkedList;
+import models.MetricsSnapshot;
+import models.Node;
+import models.ReadBuffer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An LRU cache whose hits never block.
+ * Lookups go to a concurrent index, and recency updates are recorded into striped, lossy read buffers.
+ * The buffers are replayed onto the recency list in batches by whichever thread wins a try-lock, so the
+ * lock is only ever waited on by writes to the list (loads, invalidations and evictions).
+ */
+public class BufferedLRUCache extends StripedCache {
+    private static final int DRAIN_THRESHOLD = ReadBuffer.SIZE / 2;
+
+    private final int size;
+    private final DoublyLinkedList doublyLinkedList = new DoublyLinkedList();
+    private final Map<String, Node> store = new ConcurrentHashMap<>();
+    private final Lock lock = new ReentrantLock();
+    private final ReadBuffer[] readBuffers;
+    private final LongAdder drains = new LongAdder(),
+            droppedReads = new LongAdder();
+
+    public BufferedLRUCache(String name,
+                            int size,
+                            int dbThreadPool,
+                            DatabaseInterface database) {
+        this(name, size, dbThreadPool, ExecutionModel.PLATFORM_THREADS, database);
+    }
+
+    public BufferedLRUCache(String name,
+                            int size,
+                            int dbThreadPool,
+                            ExecutionModel executionModel,
+                            DatabaseInterface database) {
+        super(name, dbThreadPool, true, executionModel, database);
+        this.size = size;
+        this.readBuffers = new ReadBuffer[Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1)];
+        for (int i = 0; i < readBuffers.length; i++) {
+            readBuffers[i] = new ReadBuffer();
+        }
+    }
+
+    @Override
+    protected Future<String> lookup(String key) {
+        final Node node = store.get(key);
+        if (node == null) {
+            return null;
+        }
+        afterRead(node);
+        return node.value;
+    }
+
+    private void afterRead(Node node) {
+        final ReadBuffer buffer = readBuffers[getBufferIndex()];
+        if (!buffer.offer(node)) {
+            droppedReads.increment();
+            tryDrain();
+        } else if (buffer.pending() >= DRAIN_THRESHOLD) {
+            tryDrain();
+        }
+    }
+
+    private void tryDrain() {
+        if (lock.tryLock()) {
+            try {
+                drainReadBuffers();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Must be called with the lock held.
+     */
+    private void drainReadBuffers() {
+        drains.increment();
+        for (final ReadBuffer buffer : readBuffers) {
+            buffer.drainTo(this::moveToHead);
+        }
+    }
+
+    private void moveToHead(Node node) {
+        // Skip buffered reads of entries that were evicted or invalidated since
+        if (store.get(node.key) == node) {
+            doublyLinkedList.delete(node);
+            doublyLinkedList.updateHead(node);
+        }
+    }
+
+    @Override
+    protected void insert(String key, Future<String> value) {
+        lock.lock();
+        try {
+            drainReadBuffers();
+            final Node existing = store.remove(key);
+            if (existing != null) {
+                doublyLinkedList.delete(existing);
+            }
+            while (store.size() >= size) {
+                final Node evicted = doublyLinkedList.evict();
+                store.remove(evicted.key);
+                statistics.evictions.increment();
+            }
+            final Node node = new Node(key, value);
+            doublyLinkedList.updateHead(node);
+            store.put(key, node);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected void invalidate(String key) {
+        lock.lock();
+        try {
+            final Node node = store.remove(key);
+            if (node != null) {
+                doublyLinkedList.delete(node);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int getBufferIndex() {
+        final long id = Thread.currentThread().getId();
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & (readBuffers.length - 1);
+    }
+
+    @Override
+    public String getStats() {
+        return super.getStats()
+                + "\ndrains: " + drains.sum()
+                + " droppedReads: " + droppedReads.sum();
+    }
+
+    @Override
+    public MetricsSnapshot getMetrics() {
+        return super.getMetrics()
+                .counter("drains", drains.sum())
+                .counter("droppedReads", droppedReads.sum());
+    }
+}
@@ -0,0 +1,376 @@
+package cache.implementations;
+
+import cache.CacheInterface;
+import database.DatabaseInterface;
+import models.MetricsSnapshot;
+import models.ConsistentHashRing;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+
+/**
+ * A cache sharded over in-process LRUCache nodes by a consistent hash ring.
+ * Every key is served by one node, which is the only one that ever caches it. Adding or removing a node pauses
+ * new requests, lets the ones already issued finish, and hands the keys that change owner over with their cached
+ * values, so the new owner starts warm and never holds a value from before it owned the key.
+ */
+public class ClusterCache implements CacheInterface {
+    private final String name;
+    private final DatabaseInterface database;
+    // Makes a node from its name and the database, which nodes must not shut down as they share it
+    private final BiFunction<String, DatabaseInterface, LRUCache> nodeFactory;
+    private final Map<String, LRUCache> nodes = new LinkedHashMap<>();
+    // Requests route under the read lock, and rebalances swap the ring under the write lock
+    private final ReadWriteLock rebalanceLock = new ReentrantReadWriteLock();
+    private final Set<CompletableFuture<?>> outstanding = ConcurrentHashMap.newKeySet();
+    private ConsistentHashRing<LRUCache> ring;
+    private int nodeCount;
+    private final LongAdder rebalances = new LongAdder(),
+            handedOffKeys = new LongAdder();
+    // Hits and lookups of removed nodes, and of all nodes when the last rebalance started
+    private long retiredHits, retiredLookups;
+    private long hitsAtRebalance, lookupsAtRebalance;
+
+    public ClusterCache(String name,
+                        int nodes,
+                        int virtualNodes,
+                        DatabaseInterface database,
+                        BiFunction<String, DatabaseInterface, LRUCache> nodeFactory) {
+        this.name = name;
+        this.database = database;
+        this.nodeFactory = nodeFactory;
+        this.ring = new ConsistentHashRing<>(virtualNodes);
+        for (int i = 0; i < nodes; i++) {
+            final String nodeName = "node-" + nodeCount++;
+            final LRUCache node = newNode(nodeName);
+            this.nodes.put(nodeName, node);
+            ring.add(nodeName, node);
+        }
+    }
+
+    @Override
+    public Future<String> get(String key) {
+        rebalanceLock.readLock().lock();
+        try {
+            return track(ring.get(key).get(key));
+        } finally {
+            rebalanceLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Future<Void> put(String key, String value) {
+        rebalanceLock.readLock().lock();
+        try {
+            return track(ring.get(key).put(key, value));
+        } finally {
+            rebalanceLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the keys of every node in one call to it.
+     */
+    @Override
+    public Future<Map<String, String>> getAll(Collection<String> keys) {
+        final List<CompletableFuture<Map<String, String>>> reads = new ArrayList<>();
+        rebalanceLock.readLock().lock();
+        try {
+            for (final Map.Entry<LRUCache, List<String>> shard : shardKeys(keys).entrySet()) {
+                reads.add(toCompletableFuture(track(shard.getKey().getAll(shard.getValue()))));
+            }
+        } finally {
+            rebalanceLock.readLock().unlock();
+        }
+        return CompletableFuture.allOf(reads.toArray(new CompletableFuture<?>[0])).thenApply(__ -> {
+            final Map<String, String> shardValues = new HashMap<>();
+            reads.forEach(read -> shardValues.putAll(read.join()));
+            final Map<String, String> values = new LinkedHashMap<>();
+            for (final String key : keys) {
+                values.put(key, shardValues.get(key));
+            }
+            return values;
+        });
+    }
+
+    /**
+     * Writes the entries of every node in one call to it.
+     */
+    @Override
+    public Future<Void> putAll(Map<String, String> entries) {
+        final List<CompletableFuture<Void>> writes = new ArrayList<>();
+        rebalanceLock.readLock().lock();
+        try {
+            for (final Map.Entry<LRUCache, List<String>> shard : shardKeys(entries.keySet()).entrySet()) {
+                final Map<String, String> shardEntries = new LinkedHashMap<>();
+                shard.getValue().forEach(key -> shardEntries.put(key, entries.get(key)));
+                writes.add(toCompletableFuture(track(shard.getKey().putAll(shardEntries))));
+            }
+        } finally {
+            rebalanceLock.readLock().unlock();
+        }
+        return CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private LRUCache newNode(String nodeName) {
+        return nodeFactory.apply(nodeName, new SharedDatabase(database));
+    }
+
+    private Map<LRUCache, List<String>> shardKeys(Collection<String> keys) {
+        final Map<LRUCache, List<String>> shards = new LinkedHashMap<>();
+        for (final String key : new LinkedHashSet<>(keys)) {
+            shards.computeIfAbsent(ring.get(key), __ -> new ArrayList<>()).add(key);
+        }
+        return shards;
+    }
+
+    private <T> Future<T> track(Future<T> result) {
+        if (result instanceof CompletableFuture) {
+            final CompletableFuture<T> future = (CompletableFuture<T>) result;
+            outstanding.add(future);
+            future.whenComplete((__, ___) -> outstanding.remove(future));
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> CompletableFuture<T> toCompletableFuture(Future<T> future) {
+        // Nodes are LRUCaches, which only hand out completable futures
+        return (CompletableFuture<T>) future;
+    }
+
+    /**
+     * Adds a node made by the node factory, and hands it the keys it takes over.
+     * If the keys cannot be handed over, the node is shut down and the cluster keeps its nodes.
+     */
+    public void addNode() {
+        rebalanceLock.writeLock().lock();
+        try {
+            final String nodeName = "node-" + nodeCount++;
+            final LRUCache node = newNode(nodeName);
+            try {
+                final ConsistentHashRing<LRUCache> next = new ConsistentHashRing<>(ring);
+                next.add(nodeName, node);
+                rebalance(next);
+            } catch (RuntimeException e) {
+                // The ring still routes to the old owners, which reload what they handed over from the database
+                node.shutdown();
+                throw e;
+            }
+            nodes.put(nodeName, node);
+        } finally {
+            rebalanceLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the node, hands its keys to the nodes taking them over, and shuts it down.
+     * If the keys cannot be handed over, the node stays in the cluster, and the nodes taking over drop what they
+     * were handed.
+     */
+    public void removeNode(String nodeName) {
+        rebalanceLock.writeLock().lock();
+        try {
+            final LRUCache node = nodes.get(nodeName);
+            if (node == null || nodes.size() == 1) {
+                throw new IllegalArgumentException("Cannot remove node: " + nodeName);
+            }
+            final ConsistentHashRing<LRUCache> next = new ConsistentHashRing<>(ring);
+            next.remove(nodeName);
+            rebalance(next);
+            nodes.remove(nodeName);
+            final Statistics statistics = node.getStatistics();
+            retiredHits += hits(statistics);
+            retiredLookups += lookups(statistics);
+            node.shutdown();
+        } finally {
+            rebalanceLock.writeLock().unlock();
+        }
+    }
+
+    public Set<String> getNodeNames() {
+        rebalanceLock.readLock().lock();
+        try {
+            return new LinkedHashSet<>(nodes.keySet());
+        } finally {
+            rebalanceLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Moves to the next ring, handing each key that changes owner to its next owner. If the hand-off fails, the
+     * current ring stays and the next owners drop the keys they were handed, as they are not routed to them and
+     * would be stale by the time they are.
+     * Must be called with the write lock held.
+     */
+    private void rebalance(ConsistentHashRing<LRUCache> next) {
+        final Map<LRUCache, Set<String>> warmed = new HashMap<>();
+        try {
+            CompletableFuture.allOf(outstanding.toArray(new CompletableFuture<?>[0]))
+                    .handle((__, e) -> null)
+                    .get(10, TimeUnit.SECONDS);
+            hitsAtRebalance = retiredHits;
+            lookupsAtRebalance = retiredLookups;
+            for (final LRUCache node : nodes.values()) {
+                hitsAtRebalance += hits(node.getStatistics());
+                lookupsAtRebalance += lookups(node.getStatistics());
+            }
+            for (final LRUCache node : nodes.values()) {
+                final Map<String, String> values = node.handOff(key -> next.get(key) != node);
+                final Map<LRUCache, Map<String, String>> owners = new HashMap<>();
+                values.forEach((key, value) -> owners.computeIfAbsent(next.get(key), __ -> new HashMap<>()).put(key, value));
+                owners.forEach((owner, ownerValues) -> {
+                    // Recorded first, as a warm that fails may have cached some of the values
+                    warmed.computeIfAbsent(owner, __ -> new HashSet<>()).addAll(ownerValues.keySet());
+                    owner.warm(ownerValues);
+                });
+                handedOffKeys.add(values.size());
+            }
+        } catch (Exception e) {
+            warmed.forEach(LRUCache::discard);
+            throw new IllegalStateException("Failed to rebalance " + name, e);
+        }
+        ring = next;
+        rebalances.increment();
+    }
+
+    private static long hits(Statistics statistics) {
+        return statistics.hits.sum() + statistics.hitsAfterWait.sum();
+    }
+
+    private static long lookups(Statistics statistics) {
+        return hits(statistics) + statistics.missesAfterWait.sum();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getStats() {
+        rebalanceLock.readLock().lock();
+        try {
+            long hits = retiredHits, lookups = retiredLookups;
+            final StringBuilder nodeStats = new StringBuilder();
+            for (final Map.Entry<String, LRUCache> node : nodes.entrySet()) {
+                final Statistics statistics = node.getValue().getStatistics();
+                hits += hits(statistics);
+                lookups += lookups(statistics);
+                nodeStats.append("\n").append(node.getKey()).append(": ").append(statistics);
+            }
+            final String stats = "nodes: " + nodes.size()
+                    + " rebalances: " + rebalances.sum()
+                    + " handedOffKeys: " + handedOffKeys.sum()
+                    + " hitRatio: " + ratio(hits, lookups);
+            if (rebalances.sum() == 0) {
+                return stats + nodeStats + "\n" + database.getStats();
+            }
+            return stats
+                    + " hitRatioBeforeRebalance: " + ratio(hitsAtRebalance, lookupsAtRebalance)
+                    + " hitRatioSinceRebalance: " + ratio(hits - hitsAtRebalance, lookups - lookupsAtRebalance)
+                    + nodeStats + "\n" + database.getStats();
+        } finally {
+            rebalanceLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the cluster's counters, each node's statistics prefixed by its name, and the shared database once.
+     */
+    @Override
+    public MetricsSnapshot getMetrics() {
+        rebalanceLock.readLock().lock();
+        try {
+            long hits = retiredHits, lookups = retiredLookups;
+            final MetricsSnapshot metrics = new MetricsSnapshot();
+            for (final Map.Entry<String, LRUCache> node : nodes.entrySet()) {
+                final Statistics statistics = node.getValue().getStatistics();
+                hits += hits(statistics);
+                lookups += lookups(statistics);
+                metrics.include(node.getKey() + ".", statistics.snapshot());
+            }
+            metrics.counter("nodes", nodes.size())
+                    .counter("rebalances", rebalances.sum())
+                    .counter("handedOffKeys", handedOffKeys.sum())
+                    .gauge("hitRatio", lookups == 0 ? 0 : (double) hits / lookups);
+            if (rebalances.sum() > 0) {
+                final long lookupsSince = lookups - lookupsAtRebalance;
+                metrics.gauge("hitRatioBeforeRebalance", lookupsAtRebalance == 0 ? 0 : (double) hitsAtRebalance / lookupsAtRebalance)
+                        .gauge("hitRatioSinceRebalance", lookupsSince == 0 ? 0 : (double) (hits - hitsAtRebalance) / lookupsSince);
+            }
+            return metrics.include("database.", database.getMetrics());
+        } finally {
+            rebalanceLock.readLock().unlock();
+        }
+    }
+
+    private static String ratio(long hits, long lookups) {
+        return String.format("%.3f", lookups == 0 ? 0 : (double) hits / lookups);
+    }
+
+    @Override
+    public void shutdown() {
+        rebalanceLock.writeLock().lock();
+        try {
+            for (final LRUCache node : nodes.values()) {
+                node.shutdown();
+            }
+        } finally {
+            rebalanceLock.writeLock().unlock();
+        }
+        database.shutdown();
+    }
+
+    /**
+     * The database as a node sees it, which outlives the node.
+     */
+    private static class SharedDatabase implements DatabaseInterface {
+        private final DatabaseInterface database;
+
+        private SharedDatabase(DatabaseInterface database) {
+            this.database = database;
+        }
+
+        @Override
+        public CompletableFuture<String> get(String key) {
+            return database.get(key);
+        }
+
+        @Override
+        public CompletableFuture<Void> set(String key, String value) {
+            return database.set(key, value);
+        }
+
+        @Override
+        public CompletableFuture<Map<String, String>> getAll(Collection<String> keys) {
+            return database.getAll(keys);
+        }
+
+        @Override
+        public CompletableFuture<Void> setAll(Map<String, String> entries) {
+            return database.setAll(entries);
+        }
+
+        @Override
+        public String getStats() {
+            return database.getStats();
+        }
+
+        @Override
+        public MetricsSnapshot getMetrics() {
+            return database.getMetrics();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
@@ -2,142 +2,775 @@ package cache.implementations;
 
 import cache.Cache;
 import cache.CacheException;
+import cache.ExecutionModel;
+import cache.eviction.EvictionPolicy;
+import cache.eviction.LRUPolicy;
+import cache.eviction.Weigher;
 import database.DBFailure;
 import database.DatabaseInterface;
-import models.DoublyLinkedList;
+import models.MetricsSnapshot;
 import models.Node;
+import models.SlabStore;
+import models.TimerWheel;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 public class LRUCache extends Cache {
+    // How often, per write-behind delay, the flusher looks for entries that are due
+    private static final int FLUSH_CHECKS_PER_DELAY = 4;
+
     private final String name;
     private final int size;
-    private final DoublyLinkedList doublyLinkedList = new DoublyLinkedList();
-    private final Map<String, Node> store = new HashMap<>();
+    private final EvictionPolicy evictionPolicy;
+    private final Map<String, Node> store = new ConcurrentHashMap<>();
     private final Lock lock = new ReentrantLock();
     private final ExecutorService[] dbQueryExecutors;
-    private final LongAdder[] beingModified;
+    // Loads that have not completed yet, which later gets for the same key join instead of reading the database
+    private final Map<String, InFlightLoad> inFlight = new ConcurrentHashMap<>();
+    // Stamps of writes that have not completed yet, a load may only cache its value if no write was issued after it
+    private final Map<String, Long> writeStamps = new ConcurrentHashMap<>();
+    private final AtomicLong writeSequence = new AtomicLong();
+    // The last queued database operation per key, used to order operations when executors do not block on them
+    private final Map<String, CompletableFuture<Void>> keyTails = new ConcurrentHashMap<>();
+    // Acknowledged writes that have not reached the database yet, in write-behind mode
+    private final Map<String, DirtyEntry> dirty = new ConcurrentHashMap<>();
+    // Dirty entries that no flush has claimed yet, which is what a batch is made of
+    private final AtomicInteger unclaimedWrites = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    // Batches of dirty entries being written, until their write succeeds or fails
+    private final Set<CompletableFuture<Void>> runningFlushes = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService flusher;
+    private final int writeBehindBatchSize;
+    // How long an acknowledged write may stay out of the database
+    private final long writeBehindDelayNanos;
+    // How long after loading an entry a hit reloads it in the background, or 0 to never reload
+    private final long refreshAfterNanos;
+    // The time to live of an entry given its key and value, and the wheel expiring entries, or null if they never expire
+    private final BiFunction<String, String, Duration> expiry;
+    private final TimerWheel timerWheel;
+    // Bounds the cache by the total weight of its entries instead of their count, when not null
+    private final Weigher weigher;
+    private final long maximumWeight;
+    // Guarded by the lock
+    private long weightedSize;
+    private final LongAdder evictedWeight = new LongAdder();
+    // Holds cached values off the heap, when not null
+    private final SlabStore slabs;
     private final boolean requestCollapsing;
+    private final boolean nonBlocking;
+    private final boolean writeBehind;
     private final Statistics statistics;
+    private final LongAdder coalescedWrites = new LongAdder(),
+            flushedWrites = new LongAdder(),
+            flushes = new LongAdder(),
+            flushRetries = new LongAdder();
+
+    public LRUCache(String name,
+                    int size,
+                    int dbThreadPool,
+                    boolean requestCollapsing,
+                    DatabaseInterface database) {
+        this(name, size, dbThreadPool, requestCollapsing, new LRUPolicy(), database);
+    }
 
     public LRUCache(String name,
                     int size,
                     int dbThreadPool,
                     boolean requestCollapsing,
+                    EvictionPolicy evictionPolicy,
                     DatabaseInterface database) {
-        super(database);
-        this.name = name;
-        this.size = size;
-        this.dbQueryExecutors = new ExecutorService[dbThreadPool];
-        this.beingModified = new LongAdder[dbThreadPool];
-        this.requestCollapsing = requestCollapsing;
-        for (int i = 0; i < dbThreadPool; i++) {
-            dbQueryExecutors[i] = Executors.newSingleThreadExecutor();
-            beingModified[i] = new LongAdder();
+        this(builder(name, size, database)
+                .dbThreadPool(dbThreadPool)
+                .requestCollapsing(requestCollapsing)
+                .evictionPolicy(evictionPolicy));
+    }
+
+    private LRUCache(Builder builder) {
+        super(builder.database);
+        this.name = builder.name;
+        this.size = builder.size;
+        this.evictionPolicy = builder.evictionPolicy != null ? builder.evictionPolicy : new LRUPolicy();
+        this.dbQueryExecutors = new ExecutorService[builder.dbThreadPool];
+        this.requestCollapsing = builder.requestCollapsing;
+        this.nonBlocking = builder.nonBlocking;
+        for (int i = 0; i < dbQueryExecutors.length; i++) {
+            dbQueryExecutors[i] = builder.executionModel.newSerialExecutor();
         }
         statistics = new Statistics();
+        this.writeBehind = builder.writeBehindBatchSize > 0;
+        this.writeBehindBatchSize = builder.writeBehindBatchSize;
+        this.writeBehindDelayNanos = writeBehind ? builder.writeBehindDelay.toNanos() : 0;
+        this.refreshAfterNanos = builder.refreshAfter != null ? builder.refreshAfter.toNanos() : 0;
+        this.expiry = builder.expiry;
+        this.timerWheel = expiry != null ? new TimerWheel(System.nanoTime()) : null;
+        this.weigher = builder.weigher;
+        this.slabs = builder.offHeap ? new SlabStore() : null;
+        this.maximumWeight = builder.weigher != null ? builder.maximumWeight : Long.MAX_VALUE;
+        if (writeBehind) {
+            flusher = Executors.newSingleThreadScheduledExecutor(builder.executionModel.threadFactory());
+            // Entries are flushed by their own age, between one check period short of the delay and the delay
+            final long period = Math.max(1, writeBehindDelayNanos / FLUSH_CHECKS_PER_DELAY);
+            flusher.scheduleWithFixedDelay(() -> flush(writeBehindDelayNanos - period), period, period, TimeUnit.NANOSECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    public static Builder builder(String name, int size, DatabaseInterface database) {
+        return new Builder(name, size, database);
     }
 
     @Override
     public Future<String> get(String key) {
-        if (requestCollapsing && beingModified[getHashIndex(key)].sum() == 0) {
+        final long startTime = System.nanoTime();
+        final Future<String> cached = getFromStore(key);
+        if (cached != null) {
+            statistics.getHitLatency.record(System.nanoTime() - startTime);
+            return cached;
+        }
+        final InFlightLoad load = new InFlightLoad(writeSequence.get());
+        CompletableFuture<String> result = joinInFlight(key, load);
+        if (result == null) {
+            startLoad(key, load, false);
+            result = load.result;
+        }
+        result.whenComplete((__, ___) -> statistics.getMissLatency.record(System.nanoTime() - startTime));
+        return result;
+    }
+
+    /**
+     * Queues the load behind the operations issued earlier for the key. A refresh always reads the database,
+     * while other loads first check whether the value was cached while they waited.
+     */
+    private void startLoad(String key, InFlightLoad load, boolean refresh) {
+        if (nonBlocking) {
+            sequence(key, () -> loadAsync(key, load, refresh)).whenComplete((s, e) -> {
+                inFlight.remove(key, load);
+                if (e != null) {
+                    load.result.completeExceptionally(wrapAndHandleException(key, e));
+                } else {
+                    load.result.complete(s);
+                }
+            });
+        } else {
+            getExecutor(key).execute(() -> load(key, load, refresh));
+        }
+    }
+
+    /**
+     * Reloads the entry in the background once it is due, unless a load of the key is already in flight.
+     * The caller keeps the current value.
+     */
+    private void refreshIfDue(String key, Node node) {
+        if (refreshAfterNanos == 0 || System.nanoTime() < node.refreshAt) {
+            return;
+        }
+        // Read before checking for unflushed writes, so that writes after the check are caught by the load's stamp
+        final long stamp = writeSequence.get();
+        // The database does not hold unflushed writes yet
+        if (writeBehind && dirty.containsKey(key)) {
+            return;
+        }
+        statistics.staleHits.increment();
+        final InFlightLoad load = new InFlightLoad(stamp);
+        if (inFlight.putIfAbsent(key, load) == null) {
+            statistics.refreshes.increment();
+            startLoad(key, load, true);
+        }
+    }
+
+    /**
+     * Serves the hits, and loads all the misses that no other request is loading in one database call.
+     * Only the non-blocking mode batches, as blocking executors can only wait on their own stripe of keys.
+     */
+    @Override
+    public Future<Map<String, String>> getAll(Collection<String> keys) {
+        if (!nonBlocking) {
+            return super.getAll(keys);
+        }
+        final Map<String, CompletableFuture<String>> results = new LinkedHashMap<>();
+        final Map<String, InFlightLoad> loads = new LinkedHashMap<>();
+        for (final String key : keys) {
+            if (results.containsKey(key)) {
+                continue;
+            }
+            final Future<String> cached = getFromStore(key);
+            if (cached != null) {
+                results.put(key, CompletableFuture.completedFuture(getValue(cached)));
+                continue;
+            }
+            final InFlightLoad load = new InFlightLoad(writeSequence.get());
+            final CompletableFuture<String> existing = joinInFlight(key, load);
+            if (existing != null) {
+                results.put(key, existing);
+                continue;
+            }
+            loads.put(key, load);
+            results.put(key, load.result);
+        }
+        if (!loads.isEmpty()) {
+            sequence(loads.keySet(), () -> loadAllAsync(loads)).whenComplete((values, e) -> {
+                final RuntimeException failure = e != null ? wrapAndHandleException(loads.keySet(), e) : null;
+                loads.forEach((key, load) -> {
+                    inFlight.remove(key, load);
+                    if (failure != null) {
+                        load.result.completeExceptionally(failure);
+                    } else {
+                        load.result.complete(values.get(key));
+                    }
+                });
+            });
+        }
+        return collect(results);
+    }
+
+    @Override
+    public Future<Void> put(String key, String value) {
+        final long startTime = System.nanoTime();
+        final long stamp = writeSequence.incrementAndGet();
+        if (writeBehind) {
+            final Future<Void> write = putBehind(key, value, stamp);
+            statistics.putLatency.record(System.nanoTime() - startTime);
+            return write;
+        }
+        lock.lock();
+        try {
+            writeStamps.put(key, stamp);
+            remove(key);
+            // Gets issued from now on must not share a load that may have read the old value
+            inFlight.remove(key);
+        } finally {
+            lock.unlock();
+        }
+        final CompletableFuture<Void> write;
+        if (nonBlocking) {
+            write = sequence(key, () -> database.set(key, value).orTimeout(1, TimeUnit.SECONDS))
+                    .handle((__, e) -> {
+                        if (e != null) {
+                            throw wrapAndHandleException(key, e);
+                        }
+                        return null;
+                    });
+        } else {
+            write = CompletableFuture.runAsync(() -> {
+                try {
+                    database.set(key, value).get(1, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw wrapAndHandleException(key, e);
+                }
+            }, getExecutor(key));
+        }
+        return write.whenComplete((__, ___) -> {
+            writeStamps.remove(key, stamp);
+            statistics.putLatency.record(System.nanoTime() - startTime);
+        });
+    }
+
+    /**
+     * Writes all the entries in one database call. Only the non-blocking mode batches, as in {@link #getAll}.
+     */
+    @Override
+    public Future<Void> putAll(Map<String, String> entries) {
+        if (!nonBlocking || writeBehind) {
+            return super.putAll(entries);
+        }
+        final Map<String, String> batch = new LinkedHashMap<>(entries);
+        final Map<String, Long> stamps = new HashMap<>();
+        lock.lock();
+        try {
+            for (final String key : batch.keySet()) {
+                final long stamp = writeSequence.incrementAndGet();
+                writeStamps.put(key, stamp);
+                stamps.put(key, stamp);
+                remove(key);
+                inFlight.remove(key);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return sequence(batch.keySet(), () -> database.setAll(batch).orTimeout(1, TimeUnit.SECONDS))
+                .<Void>handle((__, e) -> {
+                    if (e != null) {
+                        throw wrapAndHandleException(batch.keySet(), e);
+                    }
+                    return null;
+                })
+                .whenComplete((__, ___) -> stamps.forEach(writeStamps::remove));
+    }
+
+    /**
+     * Acknowledges the write once it is cached, replacing any value of the key that was not flushed yet.
+     */
+    private Future<Void> putBehind(String key, String value, long stamp) {
+        lock.lock();
+        try {
+            writeStamps.put(key, stamp);
+            final DirtyEntry previous = dirty.get(key);
+            // A write that replaces an unflushed one is due when the first write of the key was
+            final long dirtyAt = previous != null && !previous.flushing.get() ? previous.dirtyAt : System.nanoTime();
+            final DirtyEntry replaced = dirty.put(key, new DirtyEntry(value, stamp, dirtyAt));
+            // Claiming the replaced entry keeps flushes from writing it, unless one is writing it already
+            if (replaced != null && replaced.flushing.compareAndSet(false, true)) {
+                coalescedWrites.increment();
+            } else {
+                unclaimedWrites.incrementAndGet();
+            }
+            inFlight.remove(key);
+            add(key, value);
+        } finally {
+            lock.unlock();
+        }
+        // Entries being flushed already do not count towards the next batch
+        if (unclaimedWrites.get() >= writeBehindBatchSize && flushScheduled.compareAndSet(false, true)) {
+            flusher.execute(this::flush);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Writes the dirty entries that are not being written already, in batches of up to the batch size.
+     * Only runs on the flusher thread, or once it has stopped.
+     */
+    private CompletableFuture<Void> flush() {
+        flushScheduled.set(false);
+        return flush(Long.MIN_VALUE);
+    }
+
+    /**
+     * Writes the dirty entries that are not being written already and were first written at least minAgeNanos
+     * ago, in batches of up to the batch size.
+     */
+    private CompletableFuture<Void> flush(long minAgeNanos) {
+        final long now = System.nanoTime();
+        final List<CompletableFuture<Void>> writes = new ArrayList<>();
+        Map<String, DirtyEntry> batch = new LinkedHashMap<>();
+        for (final Map.Entry<String, DirtyEntry> entry : dirty.entrySet()) {
+            if (now - entry.getValue().dirtyAt < minAgeNanos || !entry.getValue().flushing.compareAndSet(false, true)) {
+                continue;
+            }
+            unclaimedWrites.decrementAndGet();
+            batch.put(entry.getKey(), entry.getValue());
+            if (batch.size() == writeBehindBatchSize) {
+                writes.addAll(write(batch));
+                batch = new LinkedHashMap<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            writes.addAll(write(batch));
+        }
+        for (final CompletableFuture<Void> write : writes) {
+            runningFlushes.add(write);
+            write.whenComplete((__, ___) -> runningFlushes.remove(write));
+        }
+        return CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private List<CompletableFuture<Void>> write(Map<String, DirtyEntry> batch) {
+        if (nonBlocking) {
+            flushes.increment();
+            return Collections.singletonList(sequence(batch.keySet(),
+                    () -> database.setAll(valuesOf(batch)).orTimeout(1, TimeUnit.SECONDS))
+                    .handle((__, e) -> afterFlush(batch, e)));
+        }
+        // Blocking executors only order the keys of their own stripe, so every stripe writes its own keys
+        final Map<Integer, Map<String, DirtyEntry>> stripes = new HashMap<>();
+        batch.forEach((key, entry) -> stripes.computeIfAbsent(getHashIndex(key), __ -> new LinkedHashMap<>()).put(key, entry));
+        final List<CompletableFuture<Void>> writes = new ArrayList<>();
+        stripes.forEach((index, stripe) -> {
+            flushes.increment();
+            writes.add(CompletableFuture.runAsync(() -> {
+                try {
+                    database.setAll(valuesOf(stripe)).get(1, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, dbQueryExecutors[index]).handle((__, e) -> afterFlush(stripe, e)));
+        });
+        return writes;
+    }
+
+    private Void afterFlush(Map<String, DirtyEntry> batch, Throwable e) {
+        if (e != null) {
+            // Leave the entries dirty, so that the next flush retries them, unless a later write replaced them. The
+            // lock keeps writes from replacing them meanwhile
+            flushRetries.increment();
+            lock.lock();
+            try {
+                batch.forEach((key, entry) -> {
+                    if (dirty.get(key) == entry) {
+                        entry.flushing.set(false);
+                        unclaimedWrites.incrementAndGet();
+                    }
+                });
+            } finally {
+                lock.unlock();
+            }
+            return null;
+        }
+        flushedWrites.add(batch.size());
+        batch.forEach((key, entry) -> {
+            dirty.remove(key, entry);
+            writeStamps.remove(key, entry.stamp);
+        });
+        return null;
+    }
+
+    private static Map<String, String> valuesOf(Map<String, DirtyEntry> batch) {
+        final Map<String, String> values = new HashMap<>();
+        batch.forEach((key, entry) -> values.put(key, entry.value));
+        return values;
+    }
+
+    /**
+     * Returns the cached value on a hit, when hits may skip the queue, or the value of a write that has not been
+     * flushed yet. Returns null if the key has to be loaded.
+     */
+    private Future<String> getFromStore(String key) {
+        if (requestCollapsing) {
             final Node node = store.get(key);
-            if (node != null) {
+            // Expired entries are left for the timer wheel to remove, and only skipped here
+            // Null if the entry was evicted and its slot reused since it was looked up
+            final Future<String> value = node != null && !isExpired(node) ? valueOf(node) : null;
+            if (value != null) {
                 statistics.hits.increment();
-                if (!node.value.isDone()) {
-                    statistics.collapses.increment();
+                if (evictionPolicy.isAccessLockFree()) {
+                    evictionPolicy.onAccess(node);
                 }
-                return node.value;
-            } else {
-                statistics.misses.increment();
+                refreshIfDue(key, node);
+                return value;
             }
+        }
+        // Writes are acknowledged before they reach the database, so their values must outlive their entries
+        final DirtyEntry unflushed = writeBehind ? dirty.get(key) : null;
+        if (unflushed != null) {
+            statistics.hits.increment();
+            return CompletableFuture.completedFuture(unflushed.value);
+        }
+        if (requestCollapsing) {
+            statistics.misses.increment();
         } else {
             statistics.waitInQueue.increment();
         }
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                lock.lock();
-                if (store.containsKey(key)) {
-                    statistics.hitsAfterWait.increment();
-                    return moveToHead(key);
+        return null;
+    }
+
+    /**
+     * Registers the load for the key, or returns the result of the load already registered for it.
+     */
+    private CompletableFuture<String> joinInFlight(String key, InFlightLoad load) {
+        if (requestCollapsing) {
+            final InFlightLoad existing = inFlight.putIfAbsent(key, load);
+            if (existing != null) {
+                statistics.collapses.increment();
+                return existing.result;
+            }
+        }
+        return null;
+    }
+
+    private void load(String key, InFlightLoad load, boolean refresh) {
+        try {
+            final Future<String> cached = refresh ? null : getAfterWait(key, load);
+            if (cached != null) {
+                load.result.complete(cached.get());
+                return;
+            }
+            final String s = database.get(key).get(1, TimeUnit.SECONDS);
+            addIfNotWritten(key, load, s);
+            load.result.complete(s);
+        } catch (Exception e) {
+            load.result.completeExceptionally(wrapAndHandleException(key, e));
+        } finally {
+            inFlight.remove(key, load);
+        }
+    }
+
+    private CompletableFuture<String> loadAsync(String key, InFlightLoad load, boolean refresh) {
+        try {
+            final Future<String> cached = refresh ? null : getAfterWait(key, load);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached.get());
+            }
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return database.get(key)
+                .orTimeout(1, TimeUnit.SECONDS)
+                .thenApply(s -> {
+                    addIfNotWritten(key, load, s);
+                    return s;
+                });
+    }
+
+    private CompletableFuture<Map<String, String>> loadAllAsync(Map<String, InFlightLoad> loads) {
+        final Map<String, String> values = new HashMap<>();
+        final List<String> missing = new ArrayList<>();
+        try {
+            for (final String key : loads.keySet()) {
+                final Future<String> cached = getAfterWait(key, loads.get(key));
+                if (cached != null) {
+                    values.put(key, cached.get());
+                } else {
+                    missing.add(key);
                 }
-                statistics.missesAfterWait.increment();
-                evict();
-                return database.get(key);
-            } finally {
-                lock.unlock();
             }
-        }, getExecutor(key)).thenApply(future -> {
-            try {
-                String s = future.get(1, TimeUnit.SECONDS);
-                lock.lock();
-                add(key, CompletableFuture.completedFuture(s));
-                lock.unlock();
-                return s;
-            } catch (Exception e) {
-                throw wrapAndHandleException(key, e);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (missing.isEmpty()) {
+            return CompletableFuture.completedFuture(values);
+        }
+        return database.getAll(missing)
+                .orTimeout(1, TimeUnit.SECONDS)
+                .thenApply(loaded -> {
+                    for (final String key : missing) {
+                        final String s = loaded.get(key);
+                        addIfNotWritten(key, loads.get(key), s);
+                        values.put(key, s);
+                    }
+                    return values;
+                });
+    }
+
+    /**
+     * Runs the operation once every operation issued earlier for the same key has completed.
+     * The database gives no ordering guarantees, so this is what keeps a read issued before a write from
+     * observing it, and a read issued after a write from missing it, without parking a thread.
+     */
+    private <T> CompletableFuture<T> sequence(String key, Supplier<CompletableFuture<T>> operation) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final CompletableFuture<Void> done = result.handle((__, ___) -> null);
+        final CompletableFuture<Void> previous = keyTails.put(key, done);
+        done.thenRun(() -> keyTails.remove(key, done));
+        return runAfter(previous == null ? CompletableFuture.completedFuture(null) : previous,
+                getExecutor(key),
+                operation,
+                result);
+    }
+
+    /**
+     * Runs the operation once every operation issued earlier for any of the distinct keys has completed.
+     */
+    private <T> CompletableFuture<T> sequence(Collection<String> keys, Supplier<CompletableFuture<T>> operation) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final CompletableFuture<Void> done = result.handle((__, ___) -> null);
+        final CompletableFuture<?>[] previous = new CompletableFuture<?>[keys.size()];
+        int i = 0;
+        // Two batches over the same keys queue up in the same order on every key, or each could wait on the other
+        lock.lock();
+        try {
+            for (final String key : keys) {
+                final CompletableFuture<Void> tail = keyTails.put(key, done);
+                previous[i++] = tail == null ? CompletableFuture.completedFuture(null) : tail;
             }
-        });
+        } finally {
+            lock.unlock();
+        }
+        done.thenRun(() -> keys.forEach(key -> keyTails.remove(key, done)));
+        return runAfter(CompletableFuture.allOf(previous),
+                getExecutor(keys.iterator().next()),
+                operation,
+                result);
     }
 
-    @Override
-    public Future<Void> put(String key, String value) {
-        beingModified[getHashIndex(key)].increment();
-        return CompletableFuture.supplyAsync(() -> {
-            lock.lock();
-            remove(key);
+    private <T> CompletableFuture<T> runAfter(CompletableFuture<?> previous,
+                                              Executor executor,
+                                              Supplier<CompletableFuture<T>> operation,
+                                              CompletableFuture<T> result) {
+        previous.thenComposeAsync(__ -> operation.get(), executor)
+                .whenComplete((value, e) -> {
+                    if (e != null) {
+                        result.completeExceptionally(e);
+                    } else {
+                        result.complete(value);
+                    }
+                });
+        return result;
+    }
+
+    /**
+     * Looks the key up once its request has reached the front of the queue.
+     */
+    private Future<String> getAfterWait(String key, InFlightLoad load) {
+        lock.lock();
+        try {
+            // Written since the get was issued. The write reaches the database after this load, so read it there
+            if (writeStamps.getOrDefault(key, 0L) > load.stamp) {
+                statistics.missesAfterWait.increment();
+                return null;
+            }
+            final DirtyEntry unflushed = writeBehind ? dirty.get(key) : null;
+            if (unflushed != null) {
+                statistics.hitsAfterWait.increment();
+                return CompletableFuture.completedFuture(unflushed.value);
+            }
+            expireEntries();
+            final Node node = store.get(key);
+            if (node != null && !isExpired(node)) {
+                statistics.hitsAfterWait.increment();
+                evictionPolicy.onAccess(node);
+                refreshIfDue(key, node);
+                return valueOf(node);
+            }
+            statistics.missesAfterWait.increment();
+            return null;
+        } finally {
             lock.unlock();
-            try {
-                return database.set(key, value).get(1, TimeUnit.SECONDS);
-            } catch (Exception e) {
-                throw wrapAndHandleException(key, e);
+        }
+    }
+
+    private void addIfNotWritten(String key, InFlightLoad load, String value) {
+        lock.lock();
+        try {
+            if (writeStamps.getOrDefault(key, 0L) <= load.stamp) {
+                add(key, value);
             }
-        }, getExecutor(key)).thenAccept(__ -> beingModified[getHashIndex(key)].decrement());
+        } finally {
+            lock.unlock();
+        }
     }
 
     private RuntimeException wrapAndHandleException(String key, Throwable e) {
-        if (e.getCause() instanceof DBFailure) {
+        return wrapAndHandleException(Collections.singletonList(key), e);
+    }
+
+    private RuntimeException wrapAndHandleException(Collection<String> keys, Throwable e) {
+        if (e instanceof DBFailure || e.getCause() instanceof DBFailure) {
             lock.lock();
-            remove(key);
-            lock.unlock();
+            try {
+                keys.forEach(this::remove);
+            } finally {
+                lock.unlock();
+            }
             return new CacheException();
         } else {
-            System.err.println("Failed to get key: " + key);
+            System.err.println("Failed to get keys: " + keys);
             e.printStackTrace();
             return new IllegalStateException(e);
         }
     }
 
-    private Future<String> moveToHead(String key) {
-        final Node node = store.get(key);
-        doublyLinkedList.delete(node);
-        doublyLinkedList.updateHead(node);
-        return node.value;
+    private static String getValue(Future<String> cached) {
+        try {
+            return cached.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
-    private void evict() {
-        while (store.size() == size) {
-            final Node evicted = doublyLinkedList.evict();
+    /**
+     * Evicts entries until one of the given weight fits, by count or by weight if the cache is bounded by weight.
+     */
+    private void evict(int weight) {
+        while (weigher != null ? weightedSize + weight > maximumWeight && !store.isEmpty() : store.size() >= size) {
+            final Node evicted = evictionPolicy.evict();
+            // The policy tracks no entry it can give up, so the cache goes over its bound rather than fail the load
+            if (evicted == null) {
+                break;
+            }
             store.remove(evicted.key);
+            if (timerWheel != null) {
+                timerWheel.deschedule(evicted);
+            }
+            release(evicted);
+            evictedWeight.add(evicted.weight);
             statistics.evictions.increment();
         }
     }
 
-    private void add(String key, Future<String> result) {
-        final Node node = new Node(key, result);
-        doublyLinkedList.updateHead(node);
+    /**
+     * Removes the entries whose time to live has passed. Must be called with the lock held.
+     */
+    private void expireEntries() {
+        if (timerWheel != null) {
+            timerWheel.advance(System.nanoTime(), node -> {
+                store.remove(node.key, node);
+                evictionPolicy.onRemove(node);
+                release(node);
+                statistics.expirations.increment();
+            });
+        }
+    }
+
+    private boolean isExpired(Node node) {
+        return timerWheel != null && node.expiresAt - System.nanoTime() <= 0;
+    }
+
+    private void add(String key, String value) {
+        remove(key);
+        expireEntries();
+        final int weight = weigher != null ? weigher.weigh(key, value) : 0;
+        if (weight > maximumWeight) {
+            // Would flush the whole cache and still not fit
+            return;
+        }
+        evictionPolicy.onMiss(key);
+        evict(weight);
+        final Node node = newNode(key, value);
+        node.weight = weight;
+        weightedSize += weight;
+        if (refreshAfterNanos > 0) {
+            node.refreshAt = System.nanoTime() + refreshAfterNanos;
+        }
+        if (timerWheel != null) {
+            node.expiresAt = System.nanoTime() + expiry.apply(key, value).toNanos();
+            timerWheel.schedule(node);
+        }
+        evictionPolicy.onInsert(node);
         store.put(key, node);
     }
 
+    private Node newNode(String key, String value) {
+        if (slabs != null && value != null) {
+            final long handle = slabs.allocate(value.getBytes(StandardCharsets.UTF_8));
+            // Values too large for a slot stay on the heap
+            if (handle != SlabStore.NO_HANDLE) {
+                final Node node = new Node(key, null);
+                node.handle = handle;
+                return node;
+            }
+        }
+        return new Node(key, CompletableFuture.completedFuture(value));
+    }
+
+    /**
+     * Returns the value of the node, or null if it was kept off the heap and its slot has been reused since.
+     */
+    private Future<String> valueOf(Node node) {
+        if (node.handle == SlabStore.NO_HANDLE) {
+            return node.value;
+        }
+        final byte[] value = slabs.read(node.handle);
+        return value != null ? CompletableFuture.completedFuture(new String(value, StandardCharsets.UTF_8)) : null;
+    }
+
+    private void release(Node node) {
+        weightedSize -= node.weight;
+        if (node.handle != SlabStore.NO_HANDLE) {
+            slabs.free(node.handle);
+        }
+    }
+
     private void remove(String key) {
         final Node node = store.remove(key);
         if (node != null) {
-            doublyLinkedList.delete(node);
+            evictionPolicy.onRemove(node);
+            release(node);
+            if (timerWheel != null) {
+                timerWheel.deschedule(node);
+            }
         }
     }
 
@@ -149,34 +782,317 @@ public class LRUCache extends Cache {
         return Math.abs(key.hashCode()) % dbQueryExecutors.length;
     }
 
+    /**
+     * Removes the keys the predicate accepts and returns the values cached for them, once their unflushed writes
+     * have reached the database and their loads have finished. Callers must stop sending requests for those keys
+     * first, and pass the values to the cache taking the keys over.
+     */
+    public Map<String, String> handOff(Predicate<String> moving) throws InterruptedException, ExecutionException, TimeoutException {
+        final List<CompletableFuture<String>> loads = new ArrayList<>();
+        inFlight.forEach((key, load) -> {
+            if (moving.test(key)) {
+                loads.add(load.result);
+            }
+        });
+        CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[0]))
+                .handle((__, e) -> null)
+                .get(5, TimeUnit.SECONDS);
+        // The database must hold the writes before the next owner reads it. A new flush skips the entries that
+        // flushes already running are writing, so wait for those too, and flush again while failed writes are left
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (writeBehind && dirty.keySet().stream().anyMatch(moving)) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new TimeoutException("Unflushed writes of keys being handed off");
+            }
+            // Runs after any flush already started on the flusher thread, so all of their writes are running by then
+            CompletableFuture.supplyAsync(this::flush, flusher).thenCompose(flush -> flush)
+                    .get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            CompletableFuture.allOf(runningFlushes.toArray(new CompletableFuture<?>[0]))
+                    .get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+        final Map<String, String> values = new HashMap<>();
+        lock.lock();
+        try {
+            for (final Node node : new ArrayList<>(store.values())) {
+                if (moving.test(node.key)) {
+                    final Future<String> value = isExpired(node) ? null : valueOf(node);
+                    if (value != null) {
+                        values.put(node.key, getValue(value));
+                    }
+                    remove(node.key);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return values;
+    }
+
+    /**
+     * Caches values handed off by another cache, for keys no request has reached this cache with yet.
+     */
+    public void warm(Map<String, String> values) {
+        lock.lock();
+        try {
+            values.forEach(this::add);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the cached values of the keys, which a hand-off that did not complete warmed this cache with.
+     */
+    void discard(Collection<String> keys) {
+        lock.lock();
+        try {
+            keys.forEach(this::remove);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Statistics getStatistics() {
+        return statistics;
+    }
+
+    @Override
     public String getName() {
         return name;
     }
 
+    @Override
     public String getStats() {
-        return statistics.toString() + "\n" + database.getStats();
+        String stats = statistics.toString() + "\n" + database.getStats();
+        if (weigher != null) {
+            lock.lock();
+            try {
+                stats += "\nweightedSize: " + weightedSize;
+            } finally {
+                lock.unlock();
+            }
+            stats += " maximumWeight: " + maximumWeight + " evictedWeight: " + evictedWeight.sum();
+        }
+        if (slabs != null) {
+            lock.lock();
+            try {
+                stats += "\noffHeapUsedBytes: " + slabs.usedBytes() + " offHeapReservedBytes: " + slabs.reservedBytes();
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (!writeBehind) {
+            return stats;
+        }
+        return stats
+                + "\ncoalescedWrites: " + coalescedWrites.sum()
+                + " flushedWrites: " + flushedWrites.sum()
+                + " flushes: " + flushes.sum()
+                + " flushRetries: " + flushRetries.sum()
+                + " unflushedWrites: " + dirty.size();
     }
-}
 
-class Statistics {
-    public LongAdder hits = new LongAdder(),
-            hitsAfterWait = new LongAdder(),
-            misses = new LongAdder(),
-            missesAfterWait = new LongAdder(),
-            evictions = new LongAdder(),
-            collapses = new LongAdder(),
-            waitInQueue = new LongAdder();
+    @Override
+    public MetricsSnapshot getMetrics() {
+        final MetricsSnapshot metrics = statistics.snapshot();
+        lock.lock();
+        try {
+            if (weigher != null) {
+                metrics.counter("weightedSize", weightedSize)
+                        .counter("maximumWeight", maximumWeight)
+                        .counter("evictedWeight", evictedWeight.sum());
+            }
+            if (slabs != null) {
+                metrics.counter("offHeapUsedBytes", slabs.usedBytes())
+                        .counter("offHeapReservedBytes", slabs.reservedBytes());
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (writeBehind) {
+            metrics.counter("coalescedWrites", coalescedWrites.sum())
+                    .counter("flushedWrites", flushedWrites.sum())
+                    .counter("flushes", flushes.sum())
+                    .counter("flushRetries", flushRetries.sum())
+                    .counter("unflushedWrites", dirty.size());
+        }
+        return metrics.include("database.", database.getMetrics());
+    }
 
     @Override
-    public String toString() {
-        return "Statistics{" +
-                "hits=" + hits.sum() +
-                ", misses=" + misses.sum() +
-                ", collapses=" + collapses.sum() +
-                ", waitInQueue=" + waitInQueue.sum() +
-                ", hitsAfterWait=" + hitsAfterWait.sum() +
-                ", missesAfterWait=" + missesAfterWait.sum() +
-                ", evictions=" + evictions.sum() +
-                '}';
-    }
-}
\ No newline at end of file
+    public void shutdown() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(1, TimeUnit.SECONDS);
+                // Write out what is still dirty before the executors stop, retrying failed flushes a few times
+                for (int attempt = 0; attempt < 5 && !dirty.isEmpty(); attempt++) {
+                    flush().get(5, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException e) {
+                System.err.println("Failed to flush " + dirty.size() + " writes on shutdown");
+            }
+        }
+        for (final ExecutorService executor : dbQueryExecutors) {
+            executor.shutdown();
+        }
+        try {
+            // Lets the calls already queued finish, so that no thread of the cache outlives it
+            for (final ExecutorService executor : dbQueryExecutors) {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        database.shutdown();
+    }
+
+    public static class Builder {
+        private final String name;
+        private final int size;
+        private final DatabaseInterface database;
+        private int dbThreadPool = 1;
+        private boolean requestCollapsing;
+        private boolean nonBlocking;
+        private EvictionPolicy evictionPolicy;
+        private ExecutionModel executionModel = ExecutionModel.PLATFORM_THREADS;
+        private int writeBehindBatchSize;
+        private Duration writeBehindDelay;
+        private Duration refreshAfter;
+        private BiFunction<String, String, Duration> expiry;
+        private Weigher weigher;
+        private boolean offHeap;
+        private long maximumWeight;
+
+        private Builder(String name, int size, DatabaseInterface database) {
+            this.name = name;
+            this.size = size;
+            this.database = database;
+        }
+
+        /**
+         * Number of single threaded executors that keys are striped over.
+         */
+        public Builder dbThreadPool(int dbThreadPool) {
+            this.dbThreadPool = dbThreadPool;
+            return this;
+        }
+
+        /**
+         * Serve hits without queueing, and let concurrent misses for a key share one database read.
+         */
+        public Builder requestCollapsing(boolean requestCollapsing) {
+            this.requestCollapsing = requestCollapsing;
+            return this;
+        }
+
+        /**
+         * Never park an executor thread on the database. Requests are composed with the database futures
+         * instead, and time out on a shared timer.
+         */
+        public Builder nonBlocking(boolean nonBlocking) {
+            this.nonBlocking = nonBlocking;
+            return this;
+        }
+
+        public Builder evictionPolicy(EvictionPolicy evictionPolicy) {
+            this.evictionPolicy = evictionPolicy;
+            return this;
+        }
+
+        /**
+         * The kind of threads backing the executors.
+         */
+        public Builder executionModel(ExecutionModel executionModel) {
+            this.executionModel = executionModel;
+            return this;
+        }
+
+        /**
+         * Acknowledge writes once they are cached, and write them to the database in the background.
+         * A write replaces the value of an earlier write to the key that was not flushed yet. Dirty entries are
+         * flushed in batches once batchSize of them wait for a flush, and each at most maxDelay after its key was
+         * first written. Failed flushes are retried.
+         */
+        public Builder writeBehind(int batchSize, Duration maxDelay) {
+            this.writeBehindBatchSize = batchSize;
+            this.writeBehindDelay = maxDelay;
+            return this;
+        }
+
+        /**
+         * Reload entries in the background when they are hit more than refreshAfter after being loaded, serving
+         * the current value meanwhile. Keeps hot keys off the database's latency, at most one reload per key at a time.
+         */
+        public Builder refreshAfter(Duration refreshAfter) {
+            this.refreshAfter = refreshAfter;
+            return this;
+        }
+
+        /**
+         * Expire every entry the given time after it was cached.
+         */
+        public Builder expireAfterWrite(Duration timeToLive) {
+            return expireAfter((key, value) -> timeToLive);
+        }
+
+        /**
+         * Expire each entry after the time to live returned for its key and value when it was cached.
+         */
+        public Builder expireAfter(BiFunction<String, String, Duration> expiry) {
+            this.expiry = expiry;
+            return this;
+        }
+
+        /**
+         * Bound the cache by the total weight of its entries instead of by the size it was created with.
+         * Entries heavier than the maximum weight are never cached.
+         */
+        public Builder maximumWeight(long maximumWeight, Weigher weigher) {
+            this.maximumWeight = maximumWeight;
+            this.weigher = weigher;
+            return this;
+        }
+
+        /**
+         * Keep cached values in off-heap slabs, leaving only their handles on the heap.
+         * Hits then decode a copy of the value, trading young garbage for a heap that does not grow with the cache.
+         */
+        public Builder offHeap(boolean offHeap) {
+            this.offHeap = offHeap;
+            return this;
+        }
+
+        public LRUCache build() {
+            return new LRUCache(this);
+        }
+    }
+
+    private static class DirtyEntry {
+        final String value;
+        // The write sequence of the write
+        final long stamp;
+        // When the key became dirty, which the entry's delay counts from
+        final long dirtyAt;
+        // Set once a flush claims the entry, so that it is not written twice, or once a later write replaces it
+        final AtomicBoolean flushing = new AtomicBoolean();
+
+        DirtyEntry(String value, long stamp, long dirtyAt) {
+            this.value = value;
+            this.stamp = stamp;
+            this.dirtyAt = dirtyAt;
+        }
+    }
+
+    private static class InFlightLoad {
+        // The write sequence when the load was issued
+        final long stamp;
+        final CompletableFuture<String> result = new CompletableFuture<>();
+
+        InFlightLoad(long stamp) {
+            this.stamp = stamp;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package cache.implementations;
+
+import cache.ExecutionModel;
+import database.DatabaseInterface;
+import models.DoublyLinkedList;
+import models.MetricsSnapshot;
+import models.Node;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An LRU cache whose key space is split into independently locked segments.
+ * Each segment owns its own store, recency list and share of the capacity, so requests for keys
+ * in different segments never contend on the same lock.
+ */
+public class SegmentedLRUCache extends StripedCache {
+    private final Segment[] segments;
+
+    public SegmentedLRUCache(String name,
+                             int size,
+                             int segmentCount,
+                             int dbThreadPool,
+                             boolean requestCollapsing,
+                             DatabaseInterface database) {
+        this(name, size, segmentCount, dbThreadPool, requestCollapsing, ExecutionModel.PLATFORM_THREADS, database);
+    }
+
+    public SegmentedLRUCache(String name,
+                             int size,
+                             int segmentCount,
+                             int dbThreadPool,
+                             boolean requestCollapsing,
+                             ExecutionModel executionModel,
+                             DatabaseInterface database) {
+        super(name, dbThreadPool, requestCollapsing, executionModel, database);
+        // Every segment must be able to hold at least one entry
+        this.segments = new Segment[Math.max(1, Math.min(segmentCount, size))];
+        for (int i = 0; i < segments.length; i++) {
+            final int share = size / segments.length + (i < size % segments.length ? 1 : 0);
+            segments[i] = new Segment(share, statistics);
+        }
+    }
+
+    @Override
+    protected Future<String> lookup(String key) {
+        return getSegment(key).get(key);
+    }
+
+    @Override
+    protected void insert(String key, Future<String> value) {
+        getSegment(key).add(key, value);
+    }
+
+    @Override
+    protected void invalidate(String key) {
+        getSegment(key).remove(key);
+    }
+
+    private Segment getSegment(String key) {
+        // Spread the hash so that segment selection does not correlate with executor selection
+        final int hash = key.hashCode();
+        return segments[Math.abs((hash ^ (hash >>> 16)) % segments.length)];
+    }
+
+    @Override
+    public String getStats() {
+        final StringBuilder segmentStats = new StringBuilder();
+        for (int i = 0; i < segments.length; i++) {
+            segmentStats.append("\nsegment ").append(i).append(": ").append(segments[i]);
+        }
+        return super.getStats() + segmentStats;
+    }
+
+    @Override
+    public MetricsSnapshot getMetrics() {
+        long acquisitions = 0, contentions = 0, waitNanos = 0;
+        for (final Segment segment : segments) {
+            acquisitions += segment.acquisitions.sum();
+            contentions += segment.contentions.sum();
+            waitNanos += segment.waitNanos.sum();
+        }
+        return super.getMetrics()
+                .counter("segmentLockAcquisitions", acquisitions)
+                .counter("segmentLockContentions", contentions)
+                .counter("segmentLockWaitNanos", waitNanos);
+    }
+
+    /**
+     * A bounded LRU partition guarded by its own lock, which records how often that lock was contended.
+     */
+    private static class Segment {
+        private final int size;
+        private final DoublyLinkedList doublyLinkedList = new DoublyLinkedList();
+        private final Map<String, Node> store = new HashMap<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Statistics statistics;
+        private final LongAdder acquisitions = new LongAdder(),
+                contentions = new LongAdder(),
+                waitNanos = new LongAdder();
+
+        Segment(int size, Statistics statistics) {
+            this.size = size;
+            this.statistics = statistics;
+        }
+
+        Future<String> get(String key) {
+            lock();
+            try {
+                final Node node = store.get(key);
+                if (node == null) {
+                    return null;
+                }
+                doublyLinkedList.delete(node);
+                doublyLinkedList.updateHead(node);
+                return node.value;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void add(String key, Future<String> value) {
+            lock();
+            try {
+                final Node existing = store.remove(key);
+                if (existing != null) {
+                    doublyLinkedList.delete(existing);
+                }
+                while (store.size() >= size) {
+                    final Node evicted = doublyLinkedList.evict();
+                    store.remove(evicted.key);
+                    statistics.evictions.increment();
+                }
+                final Node node = new Node(key, value);
+                doublyLinkedList.updateHead(node);
+                store.put(key, node);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void remove(String key) {
+            lock();
+            try {
+                final Node node = store.remove(key);
+                if (node != null) {
+                    doublyLinkedList.delete(node);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void lock() {
+            if (!lock.tryLock()) {
+                contentions.increment();
+                final long start = System.nanoTime();
+                lock.lock();
+                waitNanos.add(System.nanoTime() - start);
+            }
+            acquisitions.increment();
+        }
+
+        @Override
+        public String toString() {
+            return "{" +
+                    "capacity=" + size +
+                    ", acquisitions=" + acquisitions.sum() +
+                    ", contentions=" + contentions.sum() +
+                    ", waitMicros=" + waitNanos.sum() / 1000 +
+                    '}';
+        }
+    }
+}
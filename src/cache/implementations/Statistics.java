@@ -0,0 +1,88 @@
+package cache.implementations;
+
+import models.LatencyHistogram;
+import models.MetricsSnapshot;
+
+import java.util.concurrent.atomic.LongAdder;
+
+class Statistics {
+    public LongAdder hits = new LongAdder(),
+            hitsAfterWait = new LongAdder(),
+            misses = new LongAdder(),
+            missesAfterWait = new LongAdder(),
+            evictions = new LongAdder(),
+            expirations = new LongAdder(),
+            collapses = new LongAdder(),
+            waitInQueue = new LongAdder(),
+            refreshes = new LongAdder(),
+            staleHits = new LongAdder();
+    // From the call to completion, for gets served on arrival, gets that waited on a load or their turn, and puts
+    public LatencyHistogram getHitLatency = new LatencyHistogram(),
+            getMissLatency = new LatencyHistogram(),
+            putLatency = new LatencyHistogram();
+
+    public double hitRatio() {
+        final long hitCount = hits.sum() + hitsAfterWait.sum();
+        final long lookups = hitCount + missesAfterWait.sum();
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    public double collapseRate() {
+        final long missCount = misses.sum();
+        return missCount == 0 ? 0 : (double) collapses.sum() / missCount;
+    }
+
+    /**
+     * Gets that missed on arrival but were answered without a database read of their own.
+     */
+    public long dbHitsSaved() {
+        return collapses.sum() + hitsAfterWait.sum();
+    }
+
+    /**
+     * Share of hits that were served a value due for a refresh.
+     */
+    public double staleServeRate() {
+        final long hitCount = hits.sum() + hitsAfterWait.sum();
+        return hitCount == 0 ? 0 : (double) staleHits.sum() / hitCount;
+    }
+
+    public MetricsSnapshot snapshot() {
+        return new MetricsSnapshot()
+                .counter("hits", hits.sum())
+                .counter("misses", misses.sum())
+                .counter("collapses", collapses.sum())
+                .counter("waitInQueue", waitInQueue.sum())
+                .counter("hitsAfterWait", hitsAfterWait.sum())
+                .counter("missesAfterWait", missesAfterWait.sum())
+                .counter("evictions", evictions.sum())
+                .counter("expirations", expirations.sum())
+                .counter("dbHitsSaved", dbHitsSaved())
+                .counter("refreshes", refreshes.sum())
+                .gauge("hitRatio", hitRatio())
+                .gauge("collapseRate", collapseRate())
+                .gauge("staleServeRate", staleServeRate())
+                .latency("getHit", getHitLatency)
+                .latency("getMiss", getMissLatency)
+                .latency("put", putLatency);
+    }
+
+    @Override
+    public String toString() {
+        return "Statistics{" +
+                "hits=" + hits.sum() +
+                ", misses=" + misses.sum() +
+                ", collapses=" + collapses.sum() +
+                ", waitInQueue=" + waitInQueue.sum() +
+                ", hitsAfterWait=" + hitsAfterWait.sum() +
+                ", missesAfterWait=" + missesAfterWait.sum() +
+                ", evictions=" + evictions.sum() +
+                ", expirations=" + expirations.sum() +
+                ", hitRatio=" + String.format("%.3f", hitRatio()) +
+                ", collapseRate=" + String.format("%.3f", collapseRate()) +
+                ", dbHitsSaved=" + dbHitsSaved() +
+                ", refreshes=" + refreshes.sum() +
+                ", staleServeRate=" + String.format("%.3f", staleServeRate()) +
+                '}';
+    }
+}
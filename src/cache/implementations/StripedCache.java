@@ -0,0 +1,172 @@
+package cache.implementations;
+
+import cache.Cache;
+import cache.CacheException;
+import cache.ExecutionModel;
+import database.DBFailure;
+import database.DatabaseInterface;
+import models.MetricsSnapshot;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Common request flow for caches that load and invalidate keys on a striped set of single threaded executors.
+ * All loads and writes for a key run on the same executor in arrival order, which is what keeps reads consistent
+ * with earlier writes. With request collapsing, hits are served from the caller's thread without waiting on the
+ * executor: a put invalidates its key before it is queued, and loads do not cache a key while a write to it is
+ * pending, so a hit never returns a value older than the last put issued.
+ * Subclasses only decide how entries are stored, looked up and evicted.
+ */
+abstract class StripedCache extends Cache {
+    private final String name;
+    private final ExecutorService[] dbQueryExecutors;
+    // The number of writes issued and not yet completed per key, which loads must not cache over
+    private final Map<String, Integer> pendingWrites = new ConcurrentHashMap<>();
+    private final boolean requestCollapsing;
+    protected final Statistics statistics = new Statistics();
+
+    protected StripedCache(String name,
+                           int dbThreadPool,
+                           boolean requestCollapsing,
+                           ExecutionModel executionModel,
+                           DatabaseInterface database) {
+        super(database);
+        this.name = name;
+        this.dbQueryExecutors = new ExecutorService[dbThreadPool];
+        this.requestCollapsing = requestCollapsing;
+        for (int i = 0; i < dbThreadPool; i++) {
+            dbQueryExecutors[i] = executionModel.newSerialExecutor();
+        }
+    }
+
+    /**
+     * Returns the cached value and records the access, or null if the key is not cached.
+     */
+    protected abstract Future<String> lookup(String key);
+
+    /**
+     * Caches the loaded value, evicting other entries if needed.
+     */
+    protected abstract void insert(String key, Future<String> value);
+
+    protected abstract void invalidate(String key);
+
+    @Override
+    public Future<String> get(String key) {
+        final long startTime = System.nanoTime();
+        if (requestCollapsing) {
+            final Future<String> value = lookup(key);
+            if (value != null) {
+                statistics.hits.increment();
+                if (!value.isDone()) {
+                    statistics.collapses.increment();
+                }
+                statistics.getHitLatency.record(System.nanoTime() - startTime);
+                return value;
+            } else {
+                statistics.misses.increment();
+            }
+        } else {
+            statistics.waitInQueue.increment();
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                final Future<String> value = lookup(key);
+                if (value != null) {
+                    statistics.hitsAfterWait.increment();
+                    return value.get();
+                }
+                statistics.missesAfterWait.increment();
+                final String s = database.get(key).get(1, TimeUnit.SECONDS);
+                cacheUnlessWritten(key, s);
+                return s;
+            } catch (Exception e) {
+                throw wrapAndHandleException(key, e);
+            }
+        }, getExecutor(key)).whenComplete((__, ___) -> statistics.getMissLatency.record(System.nanoTime() - startTime));
+    }
+
+    @Override
+    public Future<Void> put(String key, String value) {
+        final long startTime = System.nanoTime();
+        pendingWrites.merge(key, 1, Integer::sum);
+        // Hits do not wait on the executor, so the old value must be gone before the put returns
+        invalidate(key);
+        return CompletableFuture.runAsync(() -> {
+            invalidate(key);
+            try {
+                database.set(key, value).get(1, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw wrapAndHandleException(key, e);
+            }
+        }, getExecutor(key)).whenComplete((__, ___) -> {
+            pendingWrites.computeIfPresent(key, (k, writes) -> writes == 1 ? null : writes - 1);
+            statistics.putLatency.record(System.nanoTime() - startTime);
+        });
+    }
+
+    /**
+     * Caches a loaded value, unless a write to the key was issued since, as the value may be older than the write.
+     * Checking and inserting under the key's entry in pendingWrites keeps a put from being issued in between.
+     */
+    private void cacheUnlessWritten(String key, String value) {
+        pendingWrites.compute(key, (__, writes) -> {
+            if (writes == null) {
+                insert(key, CompletableFuture.completedFuture(value));
+            }
+            return writes;
+        });
+    }
+
+    private RuntimeException wrapAndHandleException(String key, Throwable e) {
+        if (e.getCause() instanceof DBFailure) {
+            invalidate(key);
+            return new CacheException();
+        } else {
+            System.err.println("Failed to get key: " + key);
+            e.printStackTrace();
+            return new IllegalStateException(e);
+        }
+    }
+
+    private ExecutorService getExecutor(String key) {
+        return dbQueryExecutors[getHashIndex(key)];
+    }
+
+    private int getHashIndex(String key) {
+        return Math.abs(key.hashCode()) % dbQueryExecutors.length;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getStats() {
+        return statistics.toString() + "\n" + database.getStats();
+    }
+
+    @Override
+    public MetricsSnapshot getMetrics() {
+        return statistics.snapshot().include("database.", database.getMetrics());
+    }
+
+    @Override
+    public void shutdown() {
+        for (final ExecutorService executor : dbQueryExecutors) {
+            executor.shutdown();
+        }
+        try {
+            // Lets the calls already queued finish, so that no thread of the cache outlives it
+            for (final ExecutorService executor : dbQueryExecutors) {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        database.shutdown();
+    }
+}
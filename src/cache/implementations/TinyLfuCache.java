@@ -0,0 +1,178 @@
+package cache.implementations;
+
+import cache.ExecutionModel;
+import database.DatabaseInterface;
+import models.DoublyLinkedList;
+import models.FrequencySketch;
+import models.MetricsSnapshot;
+import models.Node;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A cache using the W-TinyLFU policy.
+ * New entries land in a small window LRU. Entries leaving the window are only admitted to the main region
+ * if a frequency sketch estimates them to be more popular than the main region's eviction victim, so one-hit
+ * wonders and scans cannot flush the hot set. The main region is a segmented LRU: entries hit while on
+ * probation are promoted to the protected segment, and the protected segment overflows back to probation.
+ */
+public class TinyLfuCache extends StripedCache {
+    private static final int WINDOW = 0, PROBATION = 1, PROTECTED = 2;
+
+    private final int windowMaximum, mainMaximum, protectedMaximum;
+    private final DoublyLinkedList window = new DoublyLinkedList(),
+            probation = new DoublyLinkedList(),
+            protectedList = new DoublyLinkedList();
+    private final Map<String, Node> store = new HashMap<>();
+    private final FrequencySketch sketch;
+    private final Lock lock = new ReentrantLock();
+    private final LongAdder admitted = new LongAdder(),
+            rejected = new LongAdder();
+
+    public TinyLfuCache(String name,
+                        int size,
+                        int dbThreadPool,
+                        boolean requestCollapsing,
+                        DatabaseInterface database) {
+        this(name, size, dbThreadPool, requestCollapsing, ExecutionModel.PLATFORM_THREADS, database);
+    }
+
+    public TinyLfuCache(String name,
+                        int size,
+                        int dbThreadPool,
+                        boolean requestCollapsing,
+                        ExecutionModel executionModel,
+                        DatabaseInterface database) {
+        super(name, dbThreadPool, requestCollapsing, executionModel, database);
+        this.windowMaximum = Math.max(1, size / 100);
+        this.mainMaximum = size - windowMaximum;
+        this.protectedMaximum = mainMaximum * 4 / 5;
+        this.sketch = new FrequencySketch(size);
+    }
+
+    @Override
+    protected Future<String> lookup(String key) {
+        lock.lock();
+        try {
+            final Node node = store.get(key);
+            if (node == null) {
+                return null;
+            }
+            sketch.increment(key);
+            onHit(node);
+            return node.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected void insert(String key, Future<String> value) {
+        lock.lock();
+        try {
+            sketch.increment(key);
+            final Node existing = store.remove(key);
+            if (existing != null) {
+                getList(existing).delete(existing);
+            }
+            final Node node = new Node(key, value);
+            node.region = WINDOW;
+            window.updateHead(node);
+            store.put(key, node);
+            evictEntries();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected void invalidate(String key) {
+        lock.lock();
+        try {
+            final Node node = store.remove(key);
+            if (node != null) {
+                getList(node).delete(node);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onHit(Node node) {
+        if (node.region == PROBATION) {
+            probation.delete(node);
+            node.region = PROTECTED;
+            protectedList.updateHead(node);
+            if (protectedList.size() > protectedMaximum) {
+                final Node demoted = protectedList.evict();
+                demoted.region = PROBATION;
+                probation.updateHead(demoted);
+            }
+        } else {
+            final DoublyLinkedList list = getList(node);
+            list.delete(node);
+            list.updateHead(node);
+        }
+    }
+
+    /**
+     * Moves the window's overflow into the main region, letting the sketch pick between it and the main victim.
+     */
+    private void evictEntries() {
+        if (window.size() <= windowMaximum) {
+            return;
+        }
+        final Node candidate = window.evict();
+        if (probation.size() + protectedList.size() < mainMaximum) {
+            candidate.region = PROBATION;
+            probation.updateHead(candidate);
+            return;
+        }
+        final Node victim = probation.size() > 0 ? probation.getTail() : protectedList.getTail();
+        if (victim != null && sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+            getList(victim).delete(victim);
+            drop(victim);
+            candidate.region = PROBATION;
+            probation.updateHead(candidate);
+            admitted.increment();
+        } else {
+            drop(candidate);
+            rejected.increment();
+        }
+    }
+
+    private void drop(Node node) {
+        store.remove(node.key);
+        statistics.evictions.increment();
+    }
+
+    private DoublyLinkedList getList(Node node) {
+        switch (node.region) {
+            case WINDOW:
+                return window;
+            case PROBATION:
+                return probation;
+            default:
+                return protectedList;
+        }
+    }
+
+    @Override
+    public String getStats() {
+        return super.getStats()
+                + "\nadmitted: " + admitted.sum()
+                + " rejected: " + rejected.sum();
+    }
+
+    @Override
+    public MetricsSnapshot getMetrics() {
+        return super.getMetrics()
+                .counter("admitted", admitted.sum())
+                .counter("rejected", rejected.sum());
+    }
+}
@@ -0,0 +1,176 @@
+package cache.implementations;
+
+import cache.CacheInterface;
+import models.MetricsSnapshot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A small, lock-free near cache in front of another cache.
+ * The near tier is direct mapped: each key hashes to one slot, which holds the last value read for one key
+ * along with the slot's version at the time that read was issued. Writes bump the version of the key's slot
+ * before they reach the backing cache, which invalidates both the entry in the slot and any read still in
+ * flight, so the near tier never serves a value older than a write issued before the get.
+ */
+public class TwoTierCache implements CacheInterface {
+    private final String name;
+    private final CacheInterface backingCache;
+    private final AtomicReferenceArray<Entry> entries;
+    private final AtomicLongArray versions;
+    private final int mask;
+    private final LongAdder nearHits = new LongAdder(),
+            nearMisses = new LongAdder();
+
+    public TwoTierCache(String name, int nearSize, CacheInterface backingCache) {
+        this.name = name;
+        this.backingCache = backingCache;
+        final int slots = Integer.highestOneBit(Math.max(2, nearSize) * 2 - 1);
+        this.entries = new AtomicReferenceArray<>(slots);
+        this.versions = new AtomicLongArray(slots);
+        this.mask = slots - 1;
+    }
+
+    @Override
+    public Future<String> get(String key) {
+        final int slot = getSlot(key);
+        final long version = versions.get(slot);
+        final Entry entry = entries.get(slot);
+        if (entry != null && entry.version == version && entry.key.equals(key)) {
+            nearHits.increment();
+            return entry.value;
+        }
+        nearMisses.increment();
+        final Future<String> value = backingCache.get(key);
+        if (value instanceof CompletableFuture) {
+            ((CompletableFuture<String>) value).thenAccept(v -> fill(slot, new Entry(key, v, version)));
+        }
+        return value;
+    }
+
+    /**
+     * Installs the entry unless a newer one already holds the slot. Entries read before a write never match the
+     * slot's version again, so they are only ever replaced.
+     */
+    private void fill(int slot, Entry entry) {
+        while (true) {
+            final Entry current = entries.get(slot);
+            if (current != null && current.version > entry.version) {
+                return;
+            }
+            if (entries.compareAndSet(slot, current, entry)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public Future<Void> put(String key, String value) {
+        versions.incrementAndGet(getSlot(key));
+        return backingCache.put(key, value);
+    }
+
+    /**
+     * Serves the keys the near tier holds, and reads the rest from the backing cache in one call.
+     */
+    @Override
+    public Future<Map<String, String>> getAll(Collection<String> keys) {
+        final Map<String, String> values = new LinkedHashMap<>();
+        final List<String> misses = new ArrayList<>();
+        final Map<String, Long> missVersions = new LinkedHashMap<>();
+        for (final String key : keys) {
+            if (values.containsKey(key) || missVersions.containsKey(key)) {
+                continue;
+            }
+            final int slot = getSlot(key);
+            final long version = versions.get(slot);
+            final Entry entry = entries.get(slot);
+            if (entry != null && entry.version == version && entry.key.equals(key)) {
+                nearHits.increment();
+                values.put(key, entry.value.join());
+            } else {
+                nearMisses.increment();
+                missVersions.put(key, version);
+                misses.add(key);
+                // Keeps the position of the key in the result
+                values.put(key, null);
+            }
+        }
+        if (misses.isEmpty()) {
+            return CompletableFuture.completedFuture(values);
+        }
+        final Future<Map<String, String>> loaded = backingCache.getAll(misses);
+        if (!(loaded instanceof CompletableFuture)) {
+            return loaded;
+        }
+        return ((CompletableFuture<Map<String, String>>) loaded).thenApply(loadedValues -> {
+            loadedValues.forEach((key, v) -> {
+                fill(getSlot(key), new Entry(key, v, missVersions.get(key)));
+                values.put(key, v);
+            });
+            return values;
+        });
+    }
+
+    @Override
+    public Future<Void> putAll(Map<String, String> entries) {
+        for (final String key : entries.keySet()) {
+            versions.incrementAndGet(getSlot(key));
+        }
+        return backingCache.putAll(entries);
+    }
+
+    private int getSlot(String key) {
+        final int h = key.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getStats() {
+        final long hits = nearHits.sum(), lookups = hits + nearMisses.sum();
+        return "nearHits: " + hits
+                + " nearMisses: " + nearMisses.sum()
+                + " nearHitRatio: " + String.format("%.3f", lookups == 0 ? 0 : (double) hits / lookups)
+                + "\n" + backingCache.getStats();
+    }
+
+    @Override
+    public MetricsSnapshot getMetrics() {
+        final long hits = nearHits.sum(), lookups = hits + nearMisses.sum();
+        return new MetricsSnapshot()
+                .counter("nearHits", hits)
+                .counter("nearMisses", nearMisses.sum())
+                .gauge("nearHitRatio", lookups == 0 ? 0 : (double) hits / lookups)
+                .include("backing.", backingCache.getMetrics());
+    }
+
+    @Override
+    public void shutdown() {
+        backingCache.shutdown();
+    }
+
+    private static class Entry {
+        private final String key;
+        private final CompletableFuture<String> value;
+        private final long version;
+
+        private Entry(String key, String value, long version) {
+            this.key = key;
+            this.value = CompletableFuture.completedFuture(value);
+            this.version = version;
+        }
+    }
+}
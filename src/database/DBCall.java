@@ -1,15 +1,29 @@
 package database;
 
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
+/**
+ * One round trip to the database. Single key operations are calls with one request.
+ */
 class DBCall {
-    final DatabaseRequest request;
-    final CompletableFuture<String> response;
+    final List<DatabaseRequest> requests;
+    // Completed with the values read by the GET requests of the call
+    final CompletableFuture<Map<String, String>> response;
     final Long startTime;
+    // How long a database worker takes to serve the call, sampled when it is sent
+    final long serviceNanos;
+    // When the call completes, set by the worker thread once it knows when a database worker can serve it
+    long deadline;
+    // When a database worker starts serving the call, after any wait for one
+    long serviceStart;
 
-    public DBCall(DatabaseRequest request, CompletableFuture<String> response, Long startTime) {
-        this.request = request;
+    public DBCall(List<DatabaseRequest> requests, CompletableFuture<Map<String, String>> response, Long startTime,
+                  long serviceNanos) {
+        this.requests = requests;
         this.response = response;
         this.startTime = startTime;
+        this.serviceNanos = serviceNanos;
     }
 }
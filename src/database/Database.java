@@ -1,24 +1,48 @@
 package database;
 
+import models.LatencyHistogram;
+import models.MetricsSnapshot;
+
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.LongAdder;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Represents a concurrent database with tunable failure rate and no ordering guarantees for responses.
  * This database handles GET and SET operations, processes requests concurrently, and tracks statistics.
  */
 public class Database implements DatabaseInterface {
+    // Worker count under which calls never wait for a worker
+    public static final int UNBOUNDED_WORKERS = 0;
+    private static final long TICK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final int WHEEL_SLOTS = 64;
+    // The wake up time of a dispatcher that is not parked, which no call is due before
+    private static final long AWAKE = Long.MIN_VALUE;
 
     // Configuration and state variables
     private final int batchRequestThreshold;
     private final Map<String, String> db;
     private final Map<String, LongAdder> requestCount;
-    private final List<DBCall> pendingCalls;
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
-    private final ScheduledExecutorService executorService;
+    // Calls enqueued by any thread, drained only by the dispatcher thread
+    private final Queue<DBCall> incomingCalls;
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicBoolean batchScheduled = new AtomicBoolean();
+    // When the parked dispatcher thread wakes up by itself, Long.MAX_VALUE if it waits for a call, or AWAKE
+    private volatile long parkedUntil = AWAKE;
+    // Calls owned by the dispatcher thread that have been drained but not completed yet, by deadline
+    private final TimingWheel<DBCall> pendingCalls;
+    // Calls the dispatcher thread is completing in the current pass
+    private final List<DBCall> dueCalls = new ArrayList<>();
+    private final Random random = new Random();
+    private final LatencyModel latencyModel;
+    // When each simulated worker finishes the calls it was given, or null if calls never wait for a worker
+    private final long[] workerFreeAt;
+    private final Thread dispatcher;
+    private volatile boolean running = true;
     private final double failureRate;
 
     // Metrics counters
@@ -26,7 +50,16 @@ public class Database implements DatabaseInterface {
             clearance = new LongAdder(),
             concurrentRequests = new LongAdder(),
             failures = new LongAdder(),
-            hits = new LongAdder();
+            hits = new LongAdder(),
+            writes = new LongAdder(),
+            bulkCalls = new LongAdder(),
+            queuedCalls = new LongAdder(),
+            queueingNanos = new LongAdder();
+    // Time calls wait for a worker, and time a worker takes to serve them, by the type of their first request
+    private final LatencyHistogram getQueueTime = new LatencyHistogram(),
+            getServiceTime = new LatencyHistogram(),
+            setQueueTime = new LatencyHistogram(),
+            setServiceTime = new LatencyHistogram();
 
     /**
      * Constructs a Database instance with specified batch processing threshold and failure rate.
@@ -35,25 +68,45 @@ public class Database implements DatabaseInterface {
      * @param failureRate    The tunable failure rate for simulated failures.
      */
     public Database(final int batchThreshold, double failureRate) {
+        this(batchThreshold, failureRate, LatencyModel.fixed(Duration.ofMillis(1)), UNBOUNDED_WORKERS);
+    }
+
+    /**
+     * Constructs a Database instance whose calls are served by a limited number of workers.
+     * A call waits until a worker is free, and then takes a service time sampled from the latency model, so
+     * queueing delays grow with the load as they would on a real backend. Batches still complete every pending
+     * call at once when the threshold is reached, so a threshold above the expected queue length leaves the
+     * latency to the model alone.
+     *
+     * @param batchThreshold The threshold for batch processing of requests.
+     * @param failureRate    The tunable failure rate for simulated failures.
+     * @param latencyModel   The service time of a call.
+     * @param workers        The number of calls served in parallel, or UNBOUNDED_WORKERS.
+     */
+    public Database(final int batchThreshold, double failureRate, LatencyModel latencyModel, int workers) {
         this.batchRequestThreshold = batchThreshold;
         this.failureRate = failureRate;
+        this.latencyModel = latencyModel;
+        this.workerFreeAt = workers == UNBOUNDED_WORKERS ? null : new long[workers];
         db = new HashMap<>();
         requestCount = new ConcurrentHashMap<>(batchRequestThreshold);
-        pendingCalls = new ArrayList<>();
-        executorService = Executors.newSingleThreadScheduledExecutor();
-        // Schedule batch processing task to run periodically
-        executorService.scheduleAtFixedRate(this::completePendingRequests, 0, 1, TimeUnit.MILLISECONDS);
+        incomingCalls = new ConcurrentLinkedQueue<>();
+        pendingCalls = new TimingWheel<>(TICK_NANOS, WHEEL_SLOTS, call -> call.deadline, System.nanoTime());
+        dispatcher = new Thread(this::processRequests, "database-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
     }
 
     /**
      * Retrieves the value associated with the specified key from the database.
      *
      * @param key The key for which to retrieve the value.
-     * @return A Future representing the asynchronous result of the GET operation.
+     * @return A CompletableFuture representing the asynchronous result of the GET operation.
      */
-    public Future<String> get(String key) {
+    public CompletableFuture<String> get(String key) {
         hits.increment(); // Increment the hits counter
-        return addToRequestQueue(new DatabaseRequest(DBRType.GET, key));
+        return addToRequestQueue(Collections.singletonList(new DatabaseRequest(DBRType.GET, key)))
+                .thenApply(values -> values.get(key));
     }
 
     /**
@@ -61,81 +114,250 @@ public class Database implements DatabaseInterface {
      *
      * @param key   The key to set.
      * @param value The value to set.
-     * @return A Future representing the asynchronous result of the SET operation.
+     * @return A CompletableFuture representing the asynchronous result of the SET operation.
      */
-    public Future<Void> set(String key, String value) {
+    public CompletableFuture<Void> set(String key, String value) {
+        writes.increment();
         // Add the SET request to the queue and complete it with a null value
-        return addToRequestQueue(new DatabaseRequest(DBRType.SET, key, value))
+        return addToRequestQueue(Collections.singletonList(new DatabaseRequest(DBRType.SET, key, value)))
+                .thenAccept(__ -> {
+                });
+    }
+
+    /**
+     * Retrieves the values associated with the specified keys in a single call.
+     *
+     * @param keys The keys for which to retrieve the values.
+     * @return A CompletableFuture of the values by key, with null values for keys that are not found.
+     */
+    @Override
+    public CompletableFuture<Map<String, String>> getAll(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyMap());
+        }
+        final List<DatabaseRequest> requests = new ArrayList<>(keys.size());
+        for (final String key : keys) {
+            requests.add(new DatabaseRequest(DBRType.GET, key));
+        }
+        hits.add(requests.size());
+        bulkCalls.increment();
+        return addToRequestQueue(requests);
+    }
+
+    /**
+     * Sets the values associated with the specified keys in a single call.
+     *
+     * @param entries The keys to set, with their values.
+     * @return A CompletableFuture representing the asynchronous result of the SET operations.
+     */
+    @Override
+    public CompletableFuture<Void> setAll(Map<String, String> entries) {
+        if (entries.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final List<DatabaseRequest> requests = new ArrayList<>(entries.size());
+        entries.forEach((key, value) -> requests.add(new DatabaseRequest(DBRType.SET, key, value)));
+        writes.add(requests.size());
+        bulkCalls.increment();
+        return addToRequestQueue(requests)
                 .thenAccept(__ -> {
                 });
     }
 
     /**
-     * Adds a database request to the pending queue for processing.
+     * Adds a database call to the pending queue for processing.
      *
-     * @param databaseRequest The database request to enqueue.
-     * @return A CompletableFuture representing the asynchronous response to the request.
-     */
-    private CompletableFuture<String> addToRequestQueue(DatabaseRequest databaseRequest) {
-        DBCall dbCall = new DBCall(databaseRequest, new CompletableFuture<>(), System.nanoTime());
-        lock.writeLock().lock();
-        requestCount.putIfAbsent(databaseRequest.key, new LongAdder());
-        LongAdder count = requestCount.get(databaseRequest.key);
-        count.increment();
-        if (count.sum() > 1) {
-            concurrentRequests.increment();
-        }
-        pendingCalls.add(dbCall);
-        lock.writeLock().unlock();
-        // Trigger batch processing if the threshold is reached
-        if (pendingCalls.size() >= batchRequestThreshold) {
-            executorService.execute(this::completePendingRequests);
+     * @param requests The database requests to send in one call.
+     * @return A CompletableFuture representing the asynchronous response to the call.
+     */
+    private CompletableFuture<Map<String, String>> addToRequestQueue(List<DatabaseRequest> requests) {
+        // Sampled here, so that the call knows how soon it can be due before the dispatcher schedules it
+        final long serviceNanos = latencyModel.sampleNanos(ThreadLocalRandom.current());
+        DBCall dbCall = new DBCall(requests, new CompletableFuture<>(), System.nanoTime(), serviceNanos);
+        for (final DatabaseRequest request : requests) {
+            LongAdder count = requestCount.computeIfAbsent(request.key, __ -> new LongAdder());
+            count.increment();
+            if (count.sum() > 1) {
+                concurrentRequests.increment();
+            }
+        }
+        incomingCalls.add(dbCall);
+        final int pending = pendingCount.incrementAndGet();
+        // Wake the dispatcher up if it is parked past the earliest time the call can be due, which is always the case
+        // when it is idle, or if the batch threshold is reached unless a batch is already on its way
+        if (dbCall.startTime + serviceNanos < parkedUntil
+                || (pending >= batchRequestThreshold && batchScheduled.compareAndSet(false, true))) {
+            LockSupport.unpark(dispatcher);
         }
         return dbCall.response;
     }
 
+    /**
+     * Runs on the dispatcher thread until shutdown, sleeping until the next call is due or a batch is triggered.
+     * When no calls are pending it sleeps until the next one arrives, so an idle database costs no CPU. A call that
+     * can be due before the dispatcher wakes up wakes it up, so that it is not held back by the calls ahead of it.
+     */
+    private void processRequests() {
+        while (running) {
+            completePendingRequests();
+            final long wakeUpTime = pendingCalls.isEmpty() ? Long.MAX_VALUE : pendingCalls.nextTickTime();
+            // Published before checking for calls, so that a call arriving from now on is either seen here or sees
+            // when the dispatcher wakes up
+            parkedUntil = wakeUpTime;
+            if (incomingCalls.isEmpty()) {
+                if (wakeUpTime == Long.MAX_VALUE) {
+                    LockSupport.park(this);
+                } else {
+                    final long delay = wakeUpTime - System.nanoTime();
+                    if (delay > 0) {
+                        LockSupport.parkNanos(this, delay);
+                    }
+                }
+            }
+            parkedUntil = AWAKE;
+        }
+    }
+
     /**
      * Processes pending database requests, allowing for concurrent processing.
+     * Only ever runs on the dispatcher thread, so the pending calls and the data need no locking.
      */
     private void completePendingRequests() {
-        if (!pendingCalls.isEmpty()) {
-            lock.writeLock().lock();
-            if (!pendingCalls.isEmpty()) {
-                boolean clearAll = pendingCalls.size() >= batchRequestThreshold;
-                if (clearAll) {
-                    batchCompletion.increment();
-                }
-                List<DBCall> completedRequests = new ArrayList<>();
-                Collections.shuffle(pendingCalls); // Randomize order for no ordering guarantees
-                for (final var call : pendingCalls) {
-                    final boolean oldEntry = System.nanoTime() - call.startTime > 1000000;
-                    final DatabaseRequest request = call.request;
-                    final CompletableFuture<String> response = call.response;
-                    if (Math.random() < failureRate) { // Simulate a failure
-                        failures.increment(); // Increment failure counter
-                        call.response.completeExceptionally(new DBFailure());
-                        completedRequests.add(call);
-                    } else if (clearAll || oldEntry) { // Process the request
-                        if (!clearAll) {
-                            clearance.increment(); // Increment clearance counter
-                        }
-                        if (request.type.equals(DBRType.GET)) {
-                            response.complete(getKey(request.key)); // Complete with retrieved value
-                        } else {
-                            setKey(request.key, request.value); // Set value in the database
-                            response.complete(null); // Complete with null since SET doesn't return a value
-                        }
-                        completedRequests.add(call);
-                    }
+        batchScheduled.set(false);
+        final long now = System.nanoTime();
+        DBCall incoming;
+        while ((incoming = incomingCalls.poll()) != null) {
+            schedule(incoming, now);
+        }
+        if (pendingCalls.size() + dueCalls.size() >= batchRequestThreshold) {
+            batchCompletion.increment();
+            pendingCalls.expireAll(dueCalls::add);
+            // The batch freed every worker up
+            if (workerFreeAt != null) {
+                Arrays.fill(workerFreeAt, System.nanoTime());
+            }
+        } else {
+            pendingCalls.advance(System.nanoTime(), dueCalls::add);
+            clearance.add(dueCalls.size()); // Increment clearance counter
+        }
+        final int size = dueCalls.size();
+        if (size == 0) {
+            return;
+        }
+        // Walk the calls from a random start with a random stride for no ordering guarantees
+        final int start = random.nextInt(size);
+        final int stride = randomStride(size);
+        for (int i = 0, index = start; i < size; i++, index = (index + stride) % size) {
+            final DBCall call = dueCalls.get(index);
+            // Before completing the call, so that the caller sees its latencies recorded
+            recordLatencies(call);
+            if (random.nextDouble() < failureRate) { // Simulate a failure
+                failures.increment(); // Increment failure counter
+                call.response.completeExceptionally(new DBFailure());
+            } else {
+                call.response.complete(execute(call.requests));
+            }
+            // Decrement the request counts of the completed call
+            for (final DatabaseRequest request : call.requests) {
+                requestCount.get(request.key).decrement();
+            }
+            pendingCount.decrementAndGet();
+        }
+        dueCalls.clear();
+    }
+
+    /**
+     * A step between 1 and size that shares no factor with it, so that stepping from any index visits every index
+     * once. Two draws per batch, against one per call for a shuffle, and calls due together no longer always
+     * complete in the same cyclic order.
+     */
+    private int randomStride(int size) {
+        if (size < 3) {
+            return 1;
+        }
+        int stride = 1 + random.nextInt(size - 1);
+        while (gcd(stride, size) != 1) {
+            stride = stride == size - 1 ? 1 : stride + 1;
+        }
+        return stride;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            final int remainder = a % b;
+            a = b;
+            b = remainder;
+        }
+        return a;
+    }
+
+    /**
+     * Hands the call to the worker that frees up first, and schedules its completion for when the worker is done.
+     * Calls are drained in arrival order, so workers serve them first come, first served.
+     * A call that is already due is completed in this pass, as the wheel would only hand it back on its next tick.
+     */
+    private void schedule(DBCall call, long now) {
+        long start = call.startTime;
+        if (workerFreeAt != null) {
+            int worker = 0;
+            for (int i = 1; i < workerFreeAt.length; i++) {
+                if (workerFreeAt[i] < workerFreeAt[worker]) {
+                    worker = i;
                 }
-                // Remove completed requests from the pendingCalls list and decrement request count
-                completedRequests.forEach(dbCall -> {
-                    pendingCalls.remove(dbCall);
-                    requestCount.get(dbCall.request.key).decrement();
-                });
             }
-            lock.writeLock().unlock();
+            if (workerFreeAt[worker] > start) {
+                queuedCalls.increment();
+                queueingNanos.add(workerFreeAt[worker] - start);
+                start = workerFreeAt[worker];
+            }
+            call.deadline = start + call.serviceNanos;
+            workerFreeAt[worker] = call.deadline;
+        } else {
+            call.deadline = start + call.serviceNanos;
+        }
+        call.serviceStart = start;
+        if (call.deadline <= now) {
+            dueCalls.add(call);
+        } else {
+            pendingCalls.schedule(call);
+        }
+    }
+
+    /**
+     * Records how long the call waited for a worker and how long it was then served for, up to now, which is
+     * earlier than its deadline when a batch completed it.
+     */
+    private void recordLatencies(DBCall call) {
+        final long now = System.nanoTime();
+        final boolean get = call.requests.get(0).type.equals(DBRType.GET);
+        (get ? getQueueTime : setQueueTime).record(Math.max(0, Math.min(now, call.serviceStart) - call.startTime));
+        (get ? getServiceTime : setServiceTime).record(Math.max(0, now - call.serviceStart));
+    }
+
+    /**
+     * Applies the requests of a call in order.
+     *
+     * @param requests The requests of the call.
+     * @return The values read by the GET requests, by key.
+     */
+    private Map<String, String> execute(List<DatabaseRequest> requests) {
+        if (requests.size() == 1) {
+            final DatabaseRequest request = requests.get(0);
+            if (request.type.equals(DBRType.GET)) {
+                return Collections.singletonMap(request.key, getKey(request.key)); // Complete with retrieved value
+            }
+            setKey(request.key, request.value); // Set value in the database
+            return Collections.emptyMap(); // SET doesn't return a value
+        }
+        final Map<String, String> values = new HashMap<>();
+        for (final DatabaseRequest request : requests) {
+            if (request.type.equals(DBRType.GET)) {
+                values.put(request.key, getKey(request.key));
+            } else {
+                setKey(request.key, request.value);
+            }
         }
+        return values;
     }
 
     /**
@@ -158,6 +380,22 @@ public class Database implements DatabaseInterface {
         db.put(key, value);
     }
 
+    /**
+     * Stops processing requests and waits for the dispatcher thread to exit.
+     */
+    @Override
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(dispatcher);
+        if (Thread.currentThread() != dispatcher) {
+            try {
+                dispatcher.join(TimeUnit.SECONDS.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     /**
      * Returns statistics about the database's performance and operation.
      *
@@ -170,6 +408,27 @@ public class Database implements DatabaseInterface {
                 + " batchCompletions: " + batchCompletion.sum()
                 + " concurrentRequests: " + concurrentRequests.sum()
                 + " failures: " + failures.sum()
-                + " hits: " + hits.sum();
+                + " hits: " + hits.sum()
+                + " writes: " + writes.sum()
+                + " bulkCalls: " + bulkCalls.sum()
+                + " queuedCalls: " + queuedCalls.sum()
+                + " avgQueueMicros: " + queueingNanos.sum() / Math.max(1, queuedCalls.sum()) / 1000;
+    }
+
+    @Override
+    public MetricsSnapshot getMetrics() {
+        return new MetricsSnapshot()
+                .counter("clearances", clearance.sum())
+                .counter("batchCompletions", batchCompletion.sum())
+                .counter("concurrentRequests", concurrentRequests.sum())
+                .counter("failures", failures.sum())
+                .counter("hits", hits.sum())
+                .counter("writes", writes.sum())
+                .counter("bulkCalls", bulkCalls.sum())
+                .counter("queuedCalls", queuedCalls.sum())
+                .latency("getQueueTime", getQueueTime)
+                .latency("getServiceTime", getServiceTime)
+                .latency("setQueueTime", setQueueTime)
+                .latency("setServiceTime", setServiceTime);
     }
 }
\ No newline at end of file
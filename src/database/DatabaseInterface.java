@@ -1,9 +1,25 @@
 package database;
 
-import java.util.concurrent.Future;
+import models.MetricsSnapshot;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface DatabaseInterface {
-    Future<String> get(String key);
-    Future<Void> set(String key, String value);
+    CompletableFuture<String> get(String key);
+    CompletableFuture<Void> set(String key, String value);
+
+    /**
+     * Reads all the keys in one call, which succeeds or fails as a whole.
+     */
+    CompletableFuture<Map<String, String>> getAll(Collection<String> keys);
+
+    /**
+     * Writes all the entries in one call, which succeeds or fails as a whole.
+     */
+    CompletableFuture<Void> setAll(Map<String, String> entries);
     String getStats();
+    MetricsSnapshot getMetrics();
+    void shutdown();
 }
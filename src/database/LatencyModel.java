@@ -0,0 +1,65 @@
+package database;
+
+import java.time.Duration;
+import java.util.Random;
+
+/**
+ * The service time of a database call, sampled once per call when it is queued.
+ */
+public interface LatencyModel {
+    long sampleNanos(Random random);
+
+    /**
+     * Every call takes the same time.
+     */
+    static LatencyModel fixed(Duration latency) {
+        final long nanos = latency.toNanos();
+        return named("fixed " + format(latency), random -> nanos);
+    }
+
+    /**
+     * Calls take between min and max, with every duration in between equally likely.
+     */
+    static LatencyModel uniform(Duration min, Duration max) {
+        final long minNanos = min.toNanos(), range = max.toNanos() - minNanos;
+        return named("uniform " + format(min) + "-" + format(max),
+                random -> minNanos + (long) (random.nextDouble() * range));
+    }
+
+    /**
+     * Calls take the median time times a lognormal factor, which gives the long right tail of real backends.
+     * A sigma of 0.5 puts the 99th percentile at about 3.2 times the median, a sigma of 1 at about 10 times.
+     */
+    static LatencyModel lognormal(Duration median, double sigma) {
+        final long medianNanos = median.toNanos();
+        return named("lognormal " + format(median) + " sigma " + sigma,
+                random -> (long) (medianNanos * Math.exp(sigma * random.nextGaussian())));
+    }
+
+    /**
+     * Calls follow the slow model with the given probability and the fast model otherwise, as when some calls
+     * miss the backend's own cache.
+     */
+    static LatencyModel bimodal(LatencyModel fast, LatencyModel slow, double slowProbability) {
+        return named("bimodal " + fast + " / " + slow + " at " + slowProbability,
+                random -> random.nextDouble() < slowProbability ? slow.sampleNanos(random) : fast.sampleNanos(random));
+    }
+
+    private static LatencyModel named(String name, LatencyModel model) {
+        return new LatencyModel() {
+            @Override
+            public long sampleNanos(Random random) {
+                return model.sampleNanos(random);
+            }
+
+            @Override
+            public String toString() {
+                return name;
+            }
+        };
+    }
+
+    private static String format(Duration duration) {
+        return duration.toNanos() / 1000 / 1000.0 + "ms";
+    }
+}
@@ -0,0 +1,102 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * A hashed timing wheel of items that expire at a deadline in System.nanoTime() terms.
+ * Items hash to the slot of the tick their deadline falls in, and items more than one rotation away stay in
+ * their slot until a later rotation. Scheduling is constant time, and advancing only visits the ticks that
+ * passed. Not thread safe, it is meant to be owned by a single worker thread.
+ */
+class TimingWheel<T> {
+    private final long tickNanos;
+    private final int mask;
+    private final List<List<T>> slots;
+    private final ToLongFunction<T> deadline;
+    // The last tick that was advanced over, items can only be scheduled after it
+    private long currentTick;
+    private int size;
+
+    TimingWheel(long tickNanos, int slotCount, ToLongFunction<T> deadline, long now) {
+        if (Integer.bitCount(slotCount) != 1) {
+            throw new IllegalArgumentException("The slot count must be a power of two");
+        }
+        this.tickNanos = tickNanos;
+        this.mask = slotCount - 1;
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(new ArrayList<>());
+        }
+        this.deadline = deadline;
+        this.currentTick = now / tickNanos;
+    }
+
+    void schedule(T item) {
+        // Round up, so that an item never fires before its deadline
+        final long tick = Math.max(currentTick + 1, (deadline.applyAsLong(item) + tickNanos - 1) / tickNanos);
+        slots.get((int) (tick & mask)).add(item);
+        size++;
+    }
+
+    /**
+     * Passes every item whose deadline is not after now to the consumer, and moves the wheel to now.
+     */
+    void advance(long now, Consumer<T> expired) {
+        final long nowTick = now / tickNanos;
+        // After a long sleep every slot is due, so one rotation visits all of them
+        final long ticks = Math.min(nowTick - currentTick, slots.size());
+        for (long i = 1; i <= ticks; i++) {
+            final List<T> slot = slots.get((int) ((currentTick + i) & mask));
+            if (slot.isEmpty()) {
+                continue;
+            }
+            int kept = 0;
+            for (int j = 0; j < slot.size(); j++) {
+                final T item = slot.get(j);
+                if (deadline.applyAsLong(item) <= now) {
+                    expired.accept(item);
+                    size--;
+                } else {
+                    slot.set(kept++, item);
+                }
+            }
+            slot.subList(kept, slot.size()).clear();
+        }
+        currentTick = Math.max(currentTick, nowTick);
+    }
+
+    /**
+     * Passes every item to the consumer regardless of its deadline, leaving the wheel empty.
+     */
+    void expireAll(Consumer<T> expired) {
+        for (final List<T> slot : slots) {
+            slot.forEach(expired);
+            slot.clear();
+        }
+        size = 0;
+    }
+
+    /**
+     * The time of the earliest tick holding an item, which may be an item due in a later rotation.
+     * Only meaningful when the wheel is not empty.
+     */
+    long nextTickTime() {
+        for (int i = 1; i <= slots.size(); i++) {
+            if (!slots.get((int) ((currentTick + i) & mask)).isEmpty()) {
+                return (currentTick + i) * tickNanos;
+            }
+        }
+        return (currentTick + slots.size()) * tickNanos;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+}
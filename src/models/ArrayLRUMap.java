@@ -0,0 +1,171 @@
+package models;
+
+/**
+ * An LRU map of a fixed number of entries held in parallel arrays, so that hits and evictions allocate nothing.
+ * Entries live in slots linked into a recency list by int indices, and are found through an open addressing
+ * table of slot indices with linear probing. Removals shift the rest of a probe run back instead of leaving
+ * tombstones, so lookups do not slow down as entries churn.
+ * This class is not thread safe.
+ */
+public class ArrayLRUMap<V> {
+    private static final int NONE = -1;
+
+    private final String[] keys;
+    private final Object[] values;
+    private final int[] hashes;
+    private final int[] prev, next;
+    // One more than the slot of the entry in each bucket, so that an empty bucket is 0
+    private final int[] table;
+    private final int tableMask;
+    private int head = NONE, tail = NONE;
+    private int size;
+    // Freed slots are chained through next, and slots from used on were never handed out
+    private int freeSlots = NONE;
+    private int used;
+
+    public ArrayLRUMap(int capacity) {
+        this.keys = new String[capacity];
+        this.values = new Object[capacity];
+        this.hashes = new int[capacity];
+        this.prev = new int[capacity];
+        this.next = new int[capacity];
+        // At most half full, which keeps probe runs short
+        this.table = new int[Integer.highestOneBit(Math.max(2, capacity) * 4 - 1)];
+        this.tableMask = table.length - 1;
+    }
+
+    /**
+     * Returns the value of the key and makes it the most recently used, or null if it is not present.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(String key) {
+        final int bucket = findBucket(key, hash(key));
+        if (bucket == NONE) {
+            return null;
+        }
+        final int slot = table[bucket] - 1;
+        unlink(slot);
+        linkHead(slot);
+        return (V) values[slot];
+    }
+
+    /**
+     * Maps the key to the value as the most recently used entry, and returns the key it evicted to make room,
+     * if any.
+     */
+    public String put(String key, V value) {
+        final int hash = hash(key);
+        final int bucket = findBucket(key, hash);
+        if (bucket != NONE) {
+            final int slot = table[bucket] - 1;
+            values[slot] = value;
+            unlink(slot);
+            linkHead(slot);
+            return null;
+        }
+        String evicted = null;
+        if (size == keys.length) {
+            evicted = keys[tail];
+            removeBucket(findBucket(evicted, hashes[tail]));
+        }
+        final int slot = allocateSlot();
+        keys[slot] = key;
+        values[slot] = value;
+        hashes[slot] = hash;
+        int free = hash & tableMask;
+        while (table[free] != 0) {
+            free = (free + 1) & tableMask;
+        }
+        table[free] = slot + 1;
+        linkHead(slot);
+        size++;
+        return evicted;
+    }
+
+    public boolean remove(String key) {
+        final int bucket = findBucket(key, hash(key));
+        if (bucket == NONE) {
+            return false;
+        }
+        removeBucket(bucket);
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int findBucket(String key, int hash) {
+        int bucket = hash & tableMask;
+        while (table[bucket] != 0) {
+            final int slot = table[bucket] - 1;
+            if (hashes[slot] == hash && keys[slot].equals(key)) {
+                return bucket;
+            }
+            bucket = (bucket + 1) & tableMask;
+        }
+        return NONE;
+    }
+
+    /**
+     * Frees the entry in the bucket, and moves later entries of its probe run into the gap they may skip.
+     */
+    private void removeBucket(int bucket) {
+        final int slot = table[bucket] - 1;
+        unlink(slot);
+        keys[slot] = null;
+        values[slot] = null;
+        next[slot] = freeSlots;
+        freeSlots = slot;
+        size--;
+        int hole = bucket;
+        for (int i = (bucket + 1) & tableMask; table[i] != 0; i = (i + 1) & tableMask) {
+            final int home = hashes[table[i] - 1] & tableMask;
+            // Entries whose home is at or before the hole would no longer be found past it
+            if (((i - home) & tableMask) >= ((i - hole) & tableMask)) {
+                table[hole] = table[i];
+                hole = i;
+            }
+        }
+        table[hole] = 0;
+    }
+
+    private int allocateSlot() {
+        if (freeSlots != NONE) {
+            final int slot = freeSlots;
+            freeSlots = next[slot];
+            return slot;
+        }
+        return used++;
+    }
+
+    private void linkHead(int slot) {
+        prev[slot] = NONE;
+        next[slot] = head;
+        if (head != NONE) {
+            prev[head] = slot;
+        }
+        head = slot;
+        if (tail == NONE) {
+            tail = slot;
+        }
+    }
+
+    private void unlink(int slot) {
+        if (prev[slot] != NONE) {
+            next[prev[slot]] = next[slot];
+        } else {
+            head = next[slot];
+        }
+        if (next[slot] != NONE) {
+            prev[next[slot]] = prev[slot];
+        } else {
+            tail = prev[slot];
+        }
+    }
+
+    private static int hash(String key) {
+        final int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,59 @@
+package models;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maps keys to nodes on a hash ring, with every node placed at a number of virtual points so that keys spread
+ * evenly. Adding or removing a node only moves the keys between its points and the points before them.
+ * This class is not thread safe.
+ */
+public class ConsistentHashRing<T> {
+    private final TreeMap<Long, T> ring = new TreeMap<>();
+    private final int virtualNodes;
+
+    public ConsistentHashRing(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+    }
+
+    public ConsistentHashRing(ConsistentHashRing<T> other) {
+        this.virtualNodes = other.virtualNodes;
+        this.ring.putAll(other.ring);
+    }
+
+    public void add(String name, T node) {
+        for (int i = 0; i < virtualNodes; i++) {
+            ring.put(hash(name + "#" + i), node);
+        }
+    }
+
+    public void remove(String name) {
+        for (int i = 0; i < virtualNodes; i++) {
+            ring.remove(hash(name + "#" + i));
+        }
+    }
+
+    /**
+     * Returns the node of the first point at or after the key's hash, wrapping around the ring.
+     */
+    public T get(String key) {
+        if (ring.isEmpty()) {
+            throw new IllegalStateException("No nodes on the ring");
+        }
+        final Map.Entry<Long, T> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * 64 bit FNV-1a, finished with a mix so that similar names land far apart.
+     */
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        return h ^ (h >>> 33);
+    }
+}
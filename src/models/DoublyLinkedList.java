@@ -2,6 +2,8 @@ package models;
 
 public class DoublyLinkedList {
     Node head, tail;
+    private int size;
+
     public void updateHead(Node node) {
         node.next = head;
         node.prev = null;
@@ -12,20 +14,31 @@ public class DoublyLinkedList {
         if (tail == null) {
             tail = node;
         }
+        size++;
     }
 
     public Node evict() {
         final Node deleted = tail;
-        tail = tail.prev;
-        if (tail == null) {
+        if (deleted == null) {
             System.err.println("HEAD when tail is null: " + head);
             throw new IllegalStateException();
         }
-        tail.next = null;
+        tail = deleted.prev;
+        if (tail == null) {
+            head = null;
+        } else {
+            tail.next = null;
+        }
+        deleted.prev = null;
+        size--;
         return deleted;
     }
 
     public void delete(Node node) {
+        // A node that is not linked, having been deleted or evicted already, leaves the list and its size as they are
+        if (node.prev == null && head != node) {
+            return;
+        }
         if (head == node)
             head = node.next;
         if (tail == node)
@@ -34,5 +47,16 @@ public class DoublyLinkedList {
             node.next.prev = node.prev;
         if (node.prev != null)
             node.prev.next = node.next;
+        node.prev = null;
+        node.next = null;
+        size--;
+    }
+
+    public Node getTail() {
+        return tail;
+    }
+
+    public int size() {
+        return size;
     }
 }
@@ -0,0 +1,85 @@
+package models;
+
+/**
+ * A count-min sketch of 4-bit counters that estimates how often each key was accessed.
+ * Sixteen counters are packed into every long, and each key maps to four counters of which the minimum
+ * is the estimate. Once enough increments have been sampled every counter is halved, so that the
+ * history ages out and keys that used to be popular do not stay popular forever.
+ * This class is not thread safe.
+ */
+public class FrequencySketch {
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNT = 15;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int size;
+
+    public FrequencySketch(int maximumSize) {
+        final int capacity = Integer.highestOneBit(Math.max(2, maximumSize) * 2 - 1);
+        this.table = new long[capacity];
+        this.tableMask = capacity - 1;
+        this.sampleSize = 10 * Math.max(1, maximumSize);
+    }
+
+    public int frequency(String key) {
+        final int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            final long h = indexHash(hash, i);
+            final int offset = counterOffset(h);
+            frequency = Math.min(frequency, (int) ((table[tableIndex(h)] >>> offset) & MAX_COUNT));
+        }
+        return frequency;
+    }
+
+    public void increment(String key) {
+        final int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            final long h = indexHash(hash, i);
+            final int index = tableIndex(h);
+            final long mask = (long) MAX_COUNT << counterOffset(h);
+            if ((table[index] & mask) != mask) {
+                table[index] += 1L << counterOffset(h);
+                added = true;
+            }
+        }
+        if (added && ++size == sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Halves every counter, aging out old accesses.
+     */
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size /= 2;
+    }
+
+    private long indexHash(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private int tableIndex(long h) {
+        return (int) h & tableMask;
+    }
+
+    private int counterOffset(long h) {
+        return (int) (h >>> 60) << 2;
+    }
+
+    private int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
@@ -0,0 +1,110 @@
+package models;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts latencies in log-linear buckets, keeping at least two significant digits from a nanosecond up to
+ * centuries in a fixed 30KB of counters.
+ * Values under 128 have a bucket each, and every power of two above that is split into 64 buckets, so a
+ * reported value is never more than 1.6% above the latency it stands for. Safe to record into from any thread.
+ */
+public class LatencyHistogram {
+    private static final int EXACT = 128;
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = EXACT + (63 - 7) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder(),
+            total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        final long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        total.add(value);
+        // Only contended while the maximum is still rising
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    private static int bucket(long value) {
+        if (value < EXACT) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+        return EXACT + (exponent - 7) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * The highest value the bucket holds.
+     */
+    private static long highestValue(int bucket) {
+        if (bucket < EXACT) {
+            return bucket;
+        }
+        final int exponent = (bucket - EXACT) / SUB_BUCKETS + 7;
+        final long subBucket = (bucket - EXACT) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Returns the latency that the given share of recorded latencies, between 0 and 1, does not exceed.
+     */
+    public long percentile(double quantile) {
+        final long recorded = count.sum();
+        if (recorded == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(quantile * recorded));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        final long recorded = count.sum();
+        return recorded == 0 ? 0 : (double) total.sum() / recorded;
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(count(), mean(), percentile(0.5), percentile(0.9), percentile(0.99), percentile(0.999), max());
+    }
+
+    /**
+     * The summary of a histogram at one point in time, in nanoseconds.
+     */
+    public static class Snapshot {
+        public final long count;
+        public final double mean;
+        public final long p50, p90, p99, p999, max;
+
+        Snapshot(long count, double mean, long p50, long p90, long p99, long p999, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+    }
+}
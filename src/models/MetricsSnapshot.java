@@ -0,0 +1,136 @@
+package models;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The labels, counters, gauges and latency histograms of a component at one point in time, for export as a JSON
+ * object or a CSV row. Both are flat, with a latency spread over columns such as getHit.p99Nanos, and keep names
+ * in the order they were added.
+ */
+public class MetricsSnapshot {
+    private final Map<String, String> labels = new LinkedHashMap<>();
+    private final Map<String, Long> counters = new LinkedHashMap<>();
+    private final Map<String, Double> gauges = new LinkedHashMap<>();
+    private final Map<String, LatencyHistogram.Snapshot> latencies = new LinkedHashMap<>();
+
+    public MetricsSnapshot label(String name, String value) {
+        labels.put(name, value);
+        return this;
+    }
+
+    public MetricsSnapshot counter(String name, long value) {
+        counters.put(name, value);
+        return this;
+    }
+
+    public MetricsSnapshot gauge(String name, double value) {
+        gauges.put(name, value);
+        return this;
+    }
+
+    public MetricsSnapshot latency(String name, LatencyHistogram histogram) {
+        latencies.put(name, histogram.snapshot());
+        return this;
+    }
+
+    /**
+     * Adds everything the other snapshot holds, with its names prefixed.
+     */
+    public MetricsSnapshot include(String prefix, MetricsSnapshot other) {
+        other.labels.forEach((name, value) -> labels.put(prefix + name, value));
+        other.counters.forEach((name, value) -> counters.put(prefix + name, value));
+        other.gauges.forEach((name, value) -> gauges.put(prefix + name, value));
+        other.latencies.forEach((name, value) -> latencies.put(prefix + name, value));
+        return this;
+    }
+
+    public Map<String, String> getLabels() {
+        return Collections.unmodifiableMap(labels);
+    }
+
+    public Map<String, Long> getCounters() {
+        return Collections.unmodifiableMap(counters);
+    }
+
+    public Map<String, Double> getGauges() {
+        return Collections.unmodifiableMap(gauges);
+    }
+
+    public Map<String, LatencyHistogram.Snapshot> getLatencies() {
+        return Collections.unmodifiableMap(latencies);
+    }
+
+    /**
+     * Every value as a column, with labels as strings and the rest as numbers.
+     */
+    private Map<String, Object> columns() {
+        final Map<String, Object> columns = new LinkedHashMap<>(labels);
+        columns.putAll(counters);
+        columns.putAll(gauges);
+        latencies.forEach((name, latency) -> {
+            columns.put(name + ".count", latency.count);
+            columns.put(name + ".meanNanos", latency.mean);
+            columns.put(name + ".p50Nanos", latency.p50);
+            columns.put(name + ".p90Nanos", latency.p90);
+            columns.put(name + ".p99Nanos", latency.p99);
+            columns.put(name + ".p999Nanos", latency.p999);
+            columns.put(name + ".maxNanos", latency.max);
+        });
+        return columns;
+    }
+
+    public String toJson() {
+        final StringBuilder json = new StringBuilder("{");
+        columns().forEach((name, value) -> {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append(jsonString(name)).append(':');
+            json.append(value instanceof String ? jsonString((String) value) : format(value));
+        });
+        return json.append('}').toString();
+    }
+
+    public String toCsvHeader() {
+        return String.join(",", columns().keySet().stream().map(MetricsSnapshot::csvField).toArray(String[]::new));
+    }
+
+    public String toCsvRow() {
+        return String.join(",", columns().values().stream()
+                .map(value -> value instanceof String ? csvField((String) value) : format(value))
+                .toArray(String[]::new));
+    }
+
+    private static String format(Object value) {
+        if (value instanceof Double) {
+            final double d = (Double) value;
+            return Double.isFinite(d) ? String.format(Locale.ROOT, "%.4f", d) : "null";
+        }
+        return String.valueOf(value);
+    }
+
+    private static String jsonString(String value) {
+        final StringBuilder json = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    private static String csvField(String value) {
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+}
@@ -7,6 +7,20 @@ public class Node {
     public final Future<String> value;
     public Node next;
     public Node prev;
+    // The queue holding this node, for eviction policies that spread entries over several lists
+    public int region;
+    // Set on hits by CLOCK style policies instead of relinking the node
+    public volatile boolean referenced;
+    // When a hit should reload the entry in the background, in System.nanoTime() terms
+    public long refreshAt = Long.MAX_VALUE;
+    // When the entry expires, in System.nanoTime() terms, and its links in the timer wheel while it is scheduled
+    public long expiresAt = Long.MAX_VALUE;
+    public Node timerNext;
+    public Node timerPrev;
+    // The estimated size of the entry, for caches bounded by weight
+    public int weight;
+    // Where the value is kept off the heap, in which case the value future is null
+    public long handle = SlabStore.NO_HANDLE;
 
     public Node(String key, Future<String> value) {
         this.key = key;
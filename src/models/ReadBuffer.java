@@ -0,0 +1,57 @@
+package models;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A bounded, lossy, multi-producer single-consumer ring buffer of accessed nodes.
+ * Producers never block: when the buffer is full or a slot is lost to a racing producer, the
+ * access is dropped. Draining must be done by one thread at a time.
+ */
+public class ReadBuffer {
+    public static final int SIZE = 16;
+    private static final int MASK = SIZE - 1;
+
+    private final AtomicReferenceArray<Node> buffer = new AtomicReferenceArray<>(SIZE);
+    private final AtomicLong writeCounter = new AtomicLong();
+    private volatile long readCounter;
+
+    /**
+     * Records an access to the node.
+     *
+     * @return false if the access was dropped.
+     */
+    public boolean offer(Node node) {
+        final long head = readCounter;
+        final long tail = writeCounter.get();
+        if (tail - head >= SIZE) {
+            return false;
+        }
+        if (writeCounter.compareAndSet(tail, tail + 1)) {
+            buffer.lazySet((int) (tail & MASK), node);
+            return true;
+        }
+        return false;
+    }
+
+    public int pending() {
+        return (int) (writeCounter.get() - readCounter);
+    }
+
+    public void drainTo(Consumer<Node> consumer) {
+        long head = readCounter;
+        final long tail = writeCounter.get();
+        for (; head < tail; head++) {
+            final int index = (int) (head & MASK);
+            final Node node = buffer.get(index);
+            if (node == null) {
+                // The producer claimed this slot but has not published yet, pick it up on the next drain
+                break;
+            }
+            buffer.lazySet(index, null);
+            consumer.accept(node);
+        }
+        readCounter = head;
+    }
+}
@@ -0,0 +1,164 @@
+package models;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Keeps byte arrays outside the heap, in direct buffers carved into slots of power of two size classes.
+ * Freed slots are reused by later values of their class, so the off-heap footprint follows the live data.
+ * Values are addressed by handles that carry the generation of their slot, which is bumped whenever the slot is
+ * freed: a read through a handle whose slot was freed and reused since returns null instead of another value.
+ * Allocating and freeing must be serialized by the caller, reads are safe from any thread.
+ */
+public class SlabStore {
+    public static final long NO_HANDLE = -1;
+
+    // Each slot starts with its generation and the length of the value it holds
+    private static final int HEADER = 8;
+    private static final int MIN_SHIFT = 6, MAX_SHIFT = 20;
+    private static final int SLAB_BYTES = 1 << 22;
+    private static final int SLOT_BITS = 27;
+    private static final VarHandle GENERATION = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private final SizeClass[] classes = new SizeClass[MAX_SHIFT - MIN_SHIFT + 1];
+    private long usedBytes;
+
+    public SlabStore() {
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new SizeClass(1 << (MIN_SHIFT + i));
+        }
+    }
+
+    /**
+     * Returns the largest value that fits in a slot.
+     */
+    public int maximumLength() {
+        return (1 << MAX_SHIFT) - HEADER;
+    }
+
+    /**
+     * Copies the value into a free slot and returns its handle, or NO_HANDLE if it is too large for any slot.
+     */
+    public long allocate(byte[] value) {
+        if (value.length > maximumLength()) {
+            return NO_HANDLE;
+        }
+        final int sizeClass = Math.max(0, 32 - Integer.numberOfLeadingZeros(value.length + HEADER - 1) - MIN_SHIFT);
+        final SizeClass slots = classes[sizeClass];
+        final int slot = slots.allocate();
+        final ByteBuffer slab = slots.slab(slot);
+        final int offset = slots.offset(slot);
+        slab.putInt(offset + 4, value.length);
+        slab.put(offset + HEADER, value);
+        usedBytes += slots.slotSize;
+        final int generation = (int) GENERATION.getOpaque(slab, offset);
+        return ((long) generation << 32) | ((long) sizeClass << SLOT_BITS) | slot;
+    }
+
+    public void free(long handle) {
+        final SizeClass slots = classes[sizeClass(handle)];
+        final int slot = (int) handle & ((1 << SLOT_BITS) - 1);
+        final ByteBuffer slab = slots.slab(slot);
+        final int offset = slots.offset(slot);
+        GENERATION.setOpaque(slab, offset, (int) (handle >>> 32) + 1);
+        // Readers that see the slot's next value must see the generation change first
+        VarHandle.storeStoreFence();
+        slots.free(slot);
+        usedBytes -= slots.slotSize;
+    }
+
+    /**
+     * Copies the value out of its slot, or returns null if the slot was freed since the handle was allocated.
+     */
+    public byte[] read(long handle) {
+        final SizeClass slots = classes[sizeClass(handle)];
+        final int slot = (int) handle & ((1 << SLOT_BITS) - 1);
+        final ByteBuffer slab = slots.slab(slot);
+        final int offset = slots.offset(slot);
+        final int generation = (int) (handle >>> 32);
+        if ((int) GENERATION.getAcquire(slab, offset) != generation) {
+            return null;
+        }
+        final int length = slab.getInt(offset + 4);
+        // A length torn by a concurrent reuse is caught by the generation check below, but must not be used first
+        if (length < 0 || length > slots.slotSize - HEADER) {
+            return null;
+        }
+        final byte[] value = new byte[length];
+        slab.get(offset + HEADER, value);
+        VarHandle.loadLoadFence();
+        return (int) GENERATION.getOpaque(slab, offset) == generation ? value : null;
+    }
+
+    private static int sizeClass(long handle) {
+        return (int) (handle >>> SLOT_BITS) & 0x1F;
+    }
+
+    /**
+     * Bytes of the slots holding values.
+     */
+    public long usedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Bytes of all the slabs allocated so far, which are kept for reuse.
+     */
+    public long reservedBytes() {
+        long reserved = 0;
+        for (final SizeClass slots : classes) {
+            reserved += (long) slots.slabs.length * slots.slabBytes;
+        }
+        return reserved;
+    }
+
+    private static class SizeClass {
+        private final int slotSize;
+        private final int slabBytes;
+        private final int slotsPerSlab;
+        // Replaced on growth, so that readers never see a slab array being copied
+        private volatile ByteBuffer[] slabs = new ByteBuffer[0];
+        private int[] freeSlots = new int[16];
+        private int freeCount;
+        // Slots past this one have never been handed out
+        private int nextSlot;
+
+        private SizeClass(int slotSize) {
+            this.slotSize = slotSize;
+            this.slabBytes = Math.max(SLAB_BYTES, slotSize);
+            this.slotsPerSlab = slabBytes / slotSize;
+        }
+
+        private int allocate() {
+            if (freeCount > 0) {
+                return freeSlots[--freeCount];
+            }
+            final int slot = nextSlot++;
+            if (slot / slotsPerSlab == slabs.length) {
+                final ByteBuffer[] grown = Arrays.copyOf(slabs, slabs.length + 1);
+                // Aligned, so that the generations can be read and written atomically
+                grown[slabs.length] = ByteBuffer.allocateDirect(slabBytes + 7).alignedSlice(8);
+                slabs = grown;
+            }
+            return slot;
+        }
+
+        private void free(int slot) {
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            }
+            freeSlots[freeCount++] = slot;
+        }
+
+        private ByteBuffer slab(int slot) {
+            return slabs[slot / slotsPerSlab];
+        }
+
+        private int offset(int slot) {
+            return (slot % slotsPerSlab) * slotSize;
+        }
+    }
+}
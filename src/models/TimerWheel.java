@@ -0,0 +1,108 @@
+package models;
+
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timing wheel of nodes that expire at their expiresAt time, in System.nanoTime() terms.
+ * Each level is a ring of 64 buckets, with every level's bucket spanning a whole ring of the level below:
+ * about 1ms, 67ms, 4.3s and 4.6min per bucket. A node goes to the coarsest level it does not overshoot, and
+ * cascades down to finer levels as time passes its bucket, so scheduling and descheduling are constant time
+ * and advancing only visits the buckets that time has reached. Nodes may expire up to a millisecond late, so
+ * readers should still check the expiry of what they find.
+ * This class is not thread safe.
+ */
+public class TimerWheel {
+    private static final int BUCKETS = 64;
+    private static final int MASK = BUCKETS - 1;
+    private static final int[] SHIFTS = {20, 26, 32, 38};
+
+    // Sentinels of circular lists of nodes, linked through their timer links
+    private final Node[][] wheel = new Node[SHIFTS.length][BUCKETS];
+    private long time;
+
+    public TimerWheel(long now) {
+        this.time = now;
+        for (final Node[] level : wheel) {
+            for (int i = 0; i < BUCKETS; i++) {
+                final Node sentinel = new Node(null, null);
+                sentinel.timerPrev = sentinel;
+                sentinel.timerNext = sentinel;
+                level[i] = sentinel;
+            }
+        }
+    }
+
+    public void schedule(Node node) {
+        final Node sentinel = findBucket(node.expiresAt);
+        node.timerNext = sentinel;
+        node.timerPrev = sentinel.timerPrev;
+        sentinel.timerPrev.timerNext = node;
+        sentinel.timerPrev = node;
+    }
+
+    public void deschedule(Node node) {
+        if (node.timerNext != null) {
+            node.timerPrev.timerNext = node.timerNext;
+            node.timerNext.timerPrev = node.timerPrev;
+            node.timerNext = null;
+            node.timerPrev = null;
+        }
+    }
+
+    /**
+     * Passes every node of the buckets that time has reached to the consumer if it has expired, and moves the
+     * rest down to a finer level.
+     */
+    public void advance(long now, Consumer<Node> expired) {
+        final long previous = time;
+        time = now;
+        for (int level = 0; level < SHIFTS.length; level++) {
+            final long previousTicks = previous >> SHIFTS[level];
+            final long ticks = now >> SHIFTS[level];
+            if (ticks - previousTicks <= 0) {
+                // Coarser levels cannot have moved if this one did not
+                break;
+            }
+            // The finest level expires the buckets time has left. Coarser levels move the buckets time has entered
+            // down, so that their nodes are in the finest level before they are due.
+            final long first = level == 0 ? previousTicks : previousTicks + 1;
+            final long passed = Math.min(ticks - previousTicks, BUCKETS);
+            for (long i = 0; i < passed; i++) {
+                expire(wheel[level][(int) ((first + i) & MASK)], now, expired);
+            }
+        }
+    }
+
+    private void expire(Node sentinel, long now, Consumer<Node> expired) {
+        Node node = sentinel.timerNext;
+        // Detach the bucket first, as nodes that are not due are scheduled again and may land in it
+        sentinel.timerNext = sentinel;
+        sentinel.timerPrev = sentinel;
+        while (node != sentinel) {
+            final Node next = node.timerNext;
+            node.timerNext = null;
+            node.timerPrev = null;
+            if (node.expiresAt - now <= 0) {
+                expired.accept(node);
+            } else {
+                schedule(node);
+            }
+            node = next;
+        }
+    }
+
+    private Node findBucket(long expiresAt) {
+        // Overdue nodes go to the current bucket, the next one to be expired
+        final long due = Math.max(expiresAt, time);
+        for (int level = 0; level < SHIFTS.length; level++) {
+            final long ticks = due >> SHIFTS[level];
+            // Less than a full ring ahead, or the node would share the bucket time is in and wait a whole rotation
+            if (ticks - (time >> SHIFTS[level]) < BUCKETS) {
+                return wheel[level][(int) (ticks & MASK)];
+            }
+        }
+        // Past the span of the wheel, the node waits in the coarsest level's last bucket and is moved on from there
+        final int last = SHIFTS.length - 1;
+        return wheel[last][(int) (((time >> SHIFTS[last]) + MASK) & MASK)];
+    }
+}
@@ -1,135 +1,356 @@
 package tester;
 
-import cache.CacheException;
+import cache.CacheInterface;
+import cache.ExecutionModel;
+import cache.eviction.ARCPolicy;
+import cache.eviction.ClockPolicy;
+import cache.eviction.SLRUPolicy;
+import cache.eviction.Weigher;
+import cache.implementations.ArrayLRUCache;
+import cache.implementations.BufferedLRUCache;
+import cache.implementations.ClusterCache;
 import cache.implementations.LRUCache;
+import cache.implementations.SegmentedLRUCache;
+import cache.implementations.TinyLfuCache;
+import cache.implementations.TwoTierCache;
 import database.Database;
+import database.LatencyModel;
+import models.MetricsSnapshot;
+import tester.load.OpenLoopDriver;
 import tester.models.RType;
 import tester.models.Request;
 import tester.order.RandomOrganizer;
 import tester.order.RequestOrganiser;
 import tester.order.RotatingOrganizer;
 import tester.order.SerialOrganizer;
+import tester.workload.Workload;
 
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
+/**
+ * Runs every cache configuration against a matrix of workloads and database behaviours, checking each response.
+ * Usage: CacheTester [coreBudget] [cellsPerCore] [dimension=name,name...]... [qps=rate]
+ * Each dimension of the matrix is picked by the names given for it, or "all", and defaults to a trimmed selection;
+ * the full cross product of every dimension runs to tens of thousands of configurations.
+ */
 public class CacheTester {
-    public static void main(String[] args) {
-        final List<RequestOrganiser> organizers = Arrays.asList(
-                new RandomOrganizer(),
-                new SerialOrganizer(),
-                new RotatingOrganizer());
-        final List<RequestGenerator> generators = Arrays.asList(
-                new RequestGenerator(0.1),
-                new RequestGenerator(0.5),
-                new RequestGenerator(0.01)
-        );
-        final int keySpace = 30, requestsPerKey = 40;
-        for (final RequestGenerator generator : generators) {
-            final var requestMap = generator.setupRequests(keySpace, requestsPerKey);
-            for (final RequestOrganiser organizer : organizers) {
-                final var requests = organizer.setOrder(keySpace, requestsPerKey, requestMap);
-                for (int factor = 2; factor <= 6; factor = factor + 2) {
-                    for (int batchThreshold = 5; batchThreshold <= keySpace; batchThreshold += keySpace / 3) {
-                        for (double failureRate = 0; failureRate < 0.03; failureRate += 0.01) {
-                            final int cacheSize = keySpace / factor;
-                            final List<LRUCache> cacheInterfaces = Arrays.asList(
-                                    new LRUCache("Blocking", cacheSize, 1, false, new Database(batchThreshold, failureRate)),
-                                    new LRUCache("Blocking Request Collapsing", cacheSize, 1, true, new Database(batchThreshold, failureRate)),
-                                    new LRUCache("Concurrent", cacheSize, cacheSize, false, new Database(batchThreshold, failureRate)),
-                                    new LRUCache("Concurrent Request Collapsing", cacheSize, cacheSize, true, new Database(batchThreshold, failureRate))
-                            );
-                            for (final LRUCache cache : cacheInterfaces) {
-                                System.out.println("Configuration: " + cache.getName()
-                                        + " + " + organizer.getClass().getSimpleName()
-                                        + " + writeProbability: " + generator.getWriteProbability()
-                                        + " + batchThreshold: " + batchThreshold
-                                        + " + failureRate: " + failureRate
-                                        + " + cacheSize: " + (100.0 / factor));
-                                testCache(cache, requests);
+    // One JSON object per configuration, appended so that runs can be compared over time
+    private static final String RESULTS_FILE = "cache-tester-results.jsonl";
+    private static final int KEY_SPACE = 30, REQUESTS_PER_KEY = 40;
+
+    /**
+     * Builds a cache of the given size on its own database.
+     */
+    private interface CacheFactory {
+        CacheInterface create(String name, int cacheSize, ExecutionModel executionModel, Database database);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        final List<String> positional = new ArrayList<>();
+        final Map<String, String> selections = new HashMap<>();
+        for (final String arg : args) {
+            final int separator = arg.indexOf('=');
+            if (separator < 0) {
+                positional.add(arg);
+            } else {
+                selections.put(arg.substring(0, separator), arg.substring(separator + 1));
+            }
+        }
+        final int coreBudget = positional.size() > 0 ? Integer.parseInt(positional.get(0)) : Runtime.getRuntime().availableProcessors();
+        final int cellsPerCore = positional.size() > 1 ? Integer.parseInt(positional.get(1)) : 1;
+        // The rate each configuration sends its requests at
+        final double qps = Double.parseDouble(Objects.requireNonNullElse(selections.remove("qps"), "1000"));
+        final String runId = Instant.now().toString();
+        final Map<String, RequestGenerator> generators = select(selections, "writes", options(
+                "0.1", new RequestGenerator(0.1),
+                "0.5", new RequestGenerator(0.5),
+                "0.01", new RequestGenerator(0.01),
+                "0.1-large", new RequestGenerator(0.1, 16, 16 * 1024)), "0.1,0.5");
+        final Map<String, RequestOrganiser> organizers = select(selections, "organizers", options(
+                "random", new RandomOrganizer(),
+                "serial", new SerialOrganizer(),
+                "rotating", new RotatingOrganizer()), "all");
+        // Skewed popularity, next to the uniform requests the organizers reorder
+        final Map<String, Workload> workloads = select(selections, "workloads", options(
+                "zipfian", Workload.zipfian(KEY_SPACE, 0.99),
+                "hotspot", Workload.hotspot(KEY_SPACE, 0.2, 0.8),
+                "scan", Workload.scan(KEY_SPACE, 0.2, Workload.zipfian(KEY_SPACE, 0.99)),
+                "shifting", Workload.shifting(KEY_SPACE, KEY_SPACE / 4, REQUESTS_PER_KEY * 4)), "all");
+        // The share of the key space the cache holds, by the factor the key space is divided by
+        final Map<String, Integer> cacheFactors = select(selections, "cacheSizes", options(
+                "1/2", 2,
+                "1/4", 4,
+                "1/6", 6), "1/4");
+        final Map<String, Integer> batchThresholds = select(selections, "batchThresholds", options(
+                "5", 5,
+                "15", 15,
+                "25", 25), "5,25");
+        final Map<String, Double> failureRates = select(selections, "failureRates", options(
+                "0", 0.0,
+                "0.01", 0.01,
+                "0.02", 0.02), "0.01");
+        final Map<String, LatencyModel> latencyModels = select(selections, "latencies", options(
+                "fixed", LatencyModel.fixed(Duration.ofMillis(1)),
+                "lognormal", LatencyModel.lognormal(Duration.ofMillis(1), 0.5)), "lognormal");
+        final Map<String, ExecutionModel> supportedModels = new LinkedHashMap<>();
+        for (final ExecutionModel executionModel : ExecutionModel.supported()) {
+            supportedModels.put(executionModel.name(), executionModel);
+        }
+        final Map<String, ExecutionModel> executionModels = select(selections, "executionModels", supportedModels, "all");
+        final Map<String, CacheFactory> caches = select(selections, "caches", cacheFactories(), "all");
+        if (!selections.isEmpty()) {
+            throw new IllegalArgumentException("Unknown dimensions: " + selections.keySet());
+        }
+        final int databaseWorkers = Database.UNBOUNDED_WORKERS;
+        final List<MatrixRunner.Cell> cells = new ArrayList<>();
+        for (final RequestGenerator generator : generators.values()) {
+            final var requestMap = generator.setupRequests(KEY_SPACE, REQUESTS_PER_KEY);
+            final Map<String, List<Request>> orders = new LinkedHashMap<>();
+            for (final RequestOrganiser organizer : organizers.values()) {
+                orders.put(organizer.getClass().getSimpleName(), organizer.setOrder(KEY_SPACE, REQUESTS_PER_KEY, requestMap));
+            }
+            for (final Workload workload : workloads.values()) {
+                orders.put(workload.toString(), generator.generate(workload, KEY_SPACE * REQUESTS_PER_KEY));
+            }
+            for (final Map.Entry<String, List<Request>> order : orders.entrySet()) {
+                final var requests = order.getValue();
+                for (final int factor : cacheFactors.values()) {
+                    final int cacheSize = KEY_SPACE / factor;
+                    for (final int batchThreshold : batchThresholds.values()) {
+                        for (final double failureRate : failureRates.values()) {
+                            for (final LatencyModel latencyModel : latencyModels.values()) {
+                                for (final ExecutionModel executionModel : executionModels.values()) {
+                                    for (final Map.Entry<String, CacheFactory> cache : caches.entrySet()) {
+                                        cells.add(new MatrixRunner.Cell(new MetricsSnapshot()
+                                                .label("runId", runId)
+                                                .label("workload", order.getKey())
+                                                .label("writeProbability", String.valueOf(generator.getWriteProbability()))
+                                                .label("valueSize", generator.describeValueSizes())
+                                                .label("batchThreshold", String.valueOf(batchThreshold))
+                                                .label("failureRate", String.valueOf(failureRate))
+                                                .label("cacheSize", String.valueOf(100.0 / factor))
+                                                .label("executionModel", String.valueOf(executionModel))
+                                                .label("databaseLatency", String.valueOf(latencyModel))
+                                                .label("databaseWorkers", String.valueOf(databaseWorkers))
+                                                .label("qps", String.valueOf(qps)),
+                                                () -> cache.getValue().create(cache.getKey(), cacheSize, executionModel,
+                                                        new Database(batchThreshold, failureRate, latencyModel, databaseWorkers)),
+                                                requests, executionModel));
+                                    }
+                                }
                             }
                         }
                     }
                 }
             }
         }
-        System.exit(0);
+        System.out.println("Running " + cells.size() + " configurations at " + qps + " requests per second");
+        final MatrixRunner.Report report = new MatrixRunner(coreBudget, cellsPerCore).run(cells,
+                (cache, requests, executionModel, out) -> testCache(cache, requests, executionModel, qps, out),
+                CacheTester::writeResult);
+        System.out.println(report);
+        System.exit(report.hasFailures() ? 1 : 0);
+    }
+
+    /**
+     * The configurations under test, by name.
+     */
+    private static Map<String, CacheFactory> cacheFactories() {
+        final Map<String, CacheFactory> caches = new LinkedHashMap<>();
+        caches.put("Blocking", (name, cacheSize, executionModel, database) ->
+                LRUCache.builder(name, cacheSize, database)
+                        .executionModel(executionModel).build());
+        caches.put("Blocking Request Collapsing", (name, cacheSize, executionModel, database) ->
+                LRUCache.builder(name, cacheSize, database)
+                        .requestCollapsing(true).executionModel(executionModel).build());
+        caches.put("Non-blocking Request Collapsing", (name, cacheSize, executionModel, database) ->
+                LRUCache.builder(name, cacheSize, database)
+                        .requestCollapsing(true).nonBlocking(true).executionModel(executionModel).build());
+        caches.put("Concurrent", (name, cacheSize, executionModel, database) ->
+                LRUCache.builder(name, cacheSize, database)
+                        .dbThreadPool(cacheSize).executionModel(executionModel).build());
+        caches.put("Concurrent Request Collapsing", (name, cacheSize, executionModel, database) ->
+                LRUCache.builder(name, cacheSize, database)
+                        .dbThreadPool(cacheSize).requestCollapsing(true).executionModel(executionModel).build());
+        caches.put("Concurrent Request Collapsing CLOCK", (name, cacheSize, executionModel, database) ->
+                LRUCache.builder(name, cacheSize, database)
+                        .dbThreadPool(cacheSize).requestCollapsing(true).evictionPolicy(new ClockPolicy())
+                        .executionModel(executionModel).build());
+        caches.put("Concurrent Request Collapsing SLRU", (name, cacheSize, executionModel, database) ->
+                LRUCache.builder(name, cacheSize, database)
+                        .dbThreadPool(cacheSize).requestCollapsing(true).evictionPolicy(new SLRUPolicy(cacheSize))
+                        .executionModel(executionModel).build());
+        caches.put("Concurrent Request Collapsing ARC", (name, cacheSize, executionModel, database) ->
+                LRUCache.builder(name, cacheSize, database)
+                        .dbThreadPool(cacheSize).requestCollapsing(true).evictionPolicy(new ARCPolicy(cacheSize))
+                        .executionModel(executionModel).build());
+        caches.put("Refresh-ahead Concurrent Request Collapsing", (name, cacheSize, executionModel, database) ->
+                LRUCache.builder(name, cacheSize, database)
+                        .dbThreadPool(cacheSize).requestCollapsing(true).refreshAfter(Duration.ofMillis(10))
+                        .executionModel(executionModel).build());
+        caches.put("TTL Concurrent Request Collapsing", (name, cacheSize, executionModel, database) ->
+                LRUCache.builder(name, cacheSize, database)
+                        .dbThreadPool(cacheSize).requestCollapsing(true).expireAfterWrite(Duration.ofMillis(5))
+                        .executionModel(executionModel).build());
+        caches.put("Weighted Concurrent Request Collapsing", (name, cacheSize, executionModel, database) ->
+                LRUCache.builder(name, cacheSize, database)
+                        .dbThreadPool(cacheSize).requestCollapsing(true)
+                        .maximumWeight(cacheSize * 1024L, Weigher.entryBytes())
+                        .executionModel(executionModel).build());
+        caches.put("Off-heap Concurrent Request Collapsing", (name, cacheSize, executionModel, database) ->
+                LRUCache.builder(name, cacheSize, database)
+                        .dbThreadPool(cacheSize).requestCollapsing(true).offHeap(true)
+                        .executionModel(executionModel).build());
+        caches.put("Write-behind Concurrent Request Collapsing", (name, cacheSize, executionModel, database) ->
+                LRUCache.builder(name, cacheSize, database)
+                        .dbThreadPool(cacheSize).requestCollapsing(true).writeBehind(KEY_SPACE / 3, Duration.ofMillis(5))
+                        .executionModel(executionModel).build());
+        caches.put("Non-blocking Write-behind Request Collapsing", (name, cacheSize, executionModel, database) ->
+                LRUCache.builder(name, cacheSize, database)
+                        .requestCollapsing(true).nonBlocking(true).writeBehind(KEY_SPACE / 3, Duration.ofMillis(5))
+                        .executionModel(executionModel).build());
+        caches.put("Segmented x2 Request Collapsing", (name, cacheSize, executionModel, database) ->
+                new SegmentedLRUCache(name, cacheSize, 2, cacheSize, true, executionModel, database));
+        caches.put("Segmented x4 Request Collapsing", (name, cacheSize, executionModel, database) ->
+                new SegmentedLRUCache(name, cacheSize, 4, cacheSize, true, executionModel, database));
+        caches.put("Buffered Concurrent", (name, cacheSize, executionModel, database) ->
+                new BufferedLRUCache(name, cacheSize, cacheSize, executionModel, database));
+        caches.put("W-TinyLFU Concurrent Request Collapsing", (name, cacheSize, executionModel, database) ->
+                new TinyLfuCache(name, cacheSize, cacheSize, true, executionModel, database));
+        caches.put("Array LRU Concurrent Request Collapsing", (name, cacheSize, executionModel, database) ->
+                new ArrayLRUCache(name, cacheSize, cacheSize, true, executionModel, database));
+        caches.put("Two-tier Concurrent Request Collapsing", (name, cacheSize, executionModel, database) ->
+                new TwoTierCache(name, Math.max(1, cacheSize / 4),
+                        LRUCache.builder(name, cacheSize, database)
+                                .dbThreadPool(cacheSize).requestCollapsing(true)
+                                .executionModel(executionModel).build()));
+        for (final int nodes : new int[]{1, 2, 4}) {
+            caches.put("Cluster of " + nodes + " Concurrent Request Collapsing", (name, cacheSize, executionModel, database) ->
+                    newCluster(name, nodes, cacheSize, executionModel, database));
+        }
+        return caches;
+    }
+
+    /**
+     * Picks the options of a dimension named by the comma separated names selected for it, or by the defaults,
+     * "all" picking every option. The selection is consumed, so that selections left over name no dimension.
+     */
+    private static <T> Map<String, T> select(Map<String, String> selections, String dimension, Map<String, T> options, String defaults) {
+        final String names = Objects.requireNonNullElse(selections.remove(dimension), defaults);
+        if (names.equals("all")) {
+            return options;
+        }
+        final Map<String, T> selected = new LinkedHashMap<>();
+        for (final String name : names.split(",")) {
+            final T option = options.get(name.trim());
+            if (option == null) {
+                throw new IllegalArgumentException("Unknown " + dimension + ": " + name + ", expected all or some of " + options.keySet());
+            }
+            selected.put(name.trim(), option);
+        }
+        return selected;
     }
 
-    private static void testCache(LRUCache cache, List<Request> requests) {
-        final long startTime = System.nanoTime() / 1000000000;
+    /**
+     * The options of a dimension from alternating names and values, in order.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Map<String, T> options(Object... namesAndValues) {
+        final Map<String, T> options = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            options.put((String) namesAndValues[i], (T) namesAndValues[i + 1]);
+        }
+        return options;
+    }
+
+    /**
+     * A cluster whose nodes split the cache size and the executors between them.
+     */
+    private static ClusterCache newCluster(String name, int nodes, int cacheSize, ExecutionModel executionModel, Database database) {
+        final int nodeSize = Math.max(1, cacheSize / nodes);
+        return new ClusterCache(name, nodes, 64, database,
+                (nodeName, nodeDatabase) -> LRUCache.builder(nodeName, nodeSize, nodeDatabase)
+                        .dbThreadPool(nodeSize).requestCollapsing(true)
+                        .executionModel(executionModel).build());
+    }
+
+    /**
+     * Sends the requests at the given rate on a fixed schedule, whether or not earlier ones have completed, and
+     * checks every response against the writes issued before it on its key.
+     */
+    private static MetricsSnapshot testCache(CacheInterface cache, List<Request> requests, ExecutionModel executionModel, double qps, PrintStream out) throws Exception {
+        final long startTime = System.nanoTime();
+        final long interval = (long) (TimeUnit.SECONDS.toNanos(1) / qps);
+        final ConsistencyChecker checker = new ConsistencyChecker();
         final List<CompletableFuture<Void>> tasks = new ArrayList<>();
         final ExecutorService[] executorService = new ExecutorService[3];
         for (int i = 0; i < executorService.length; i++) {
-            executorService[i] = Executors.newSingleThreadExecutor();
+            executorService[i] = executionModel.newSerialExecutor();
         }
-        for (final Request request : requests) {
-            final String key = request.getKey();
-            tasks.add(CompletableFuture.runAsync(() -> {
-                if (request.getType().equals(RType.GET)) {
-                    request.setResponse(cache.get(key));
-                } else {
-                    request.setResponse(cache.put(key, request.getValue()));
+        try {
+            for (int i = 0; i < requests.size(); i++) {
+                final Request request = requests.get(i);
+                OpenLoopDriver.awaitSendTime(startTime + i * interval);
+                // Rebalance clusters halfway through, so that keys change owner while requests for them are in flight
+                if (cache instanceof ClusterCache && tasks.size() == requests.size() / 2) {
+                    ((ClusterCache) cache).addNode();
                 }
-            }, executorService[Math.abs(key.hashCode()) % executorService.length]));
-            try {
-                Thread.sleep(1);
-            } catch (InterruptedException e) {
-                System.err.println("Thread sleep issues for request: " + request);
-                throw new RuntimeException(e);
+                final String key = request.getKey();
+                // Requests for a key are issued from one serial executor, so the checker sees them in issue order
+                tasks.add(CompletableFuture.runAsync(() -> {
+                    if (request.getType().equals(RType.GET)) {
+                        checker.onGet(key, cache.get(key));
+                    } else {
+                        checker.onPut(key, request.getValue(), cache.put(key, request.getValue()));
+                    }
+                }, executorService[Math.abs(key.hashCode()) % executorService.length]));
             }
-        }
-        try {
             CompletableFuture.allOf(tasks.toArray(new CompletableFuture[tasks.size()])).get(60, TimeUnit.SECONDS);
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.err.println("Problem when completing tasks");
-            System.exit(0);
-        }
-        int cacheFailures = 0;
-        final Map<String, String> currentValue = new HashMap<>();
-        for (final Request request : requests) {
-            Object result = null;
-            boolean cacheFailure = false;
-            try {
-                result = request.getResponse().get(10, TimeUnit.SECONDS);
-            } catch (Exception e) {
-                if (e.getCause() instanceof CacheException) {
-                    cacheFailure = true;
-                    cacheFailures++;
-                } else {
-                    System.err.println("Failed to " + request.getType() + " key: " + request.getKey() + " time: " + System.nanoTime() / 1000000000);
-                    e.printStackTrace();
-                    printTraceAndExit(requests, request);
-                }
+            if (!checker.awaitResolved(Duration.ofSeconds(10))) {
+                throw new IllegalStateException(checker.getOutstanding() + " requests did not complete: " + checker);
             }
-            if (!cacheFailure) {
-                if (request.getType().equals(RType.GET)) {
-                    if (!Objects.equals(currentValue.get(request.getKey()), result)) {
-                        System.err.println("Mismatch in response state: " + result + " and expected value:" + currentValue.get(request.getKey()) + " for key: " + request.getKey());
-                        printTraceAndExit(requests, request);
-                    }
-                } else {
-                    currentValue.put(request.getKey(), request.getValue());
-                }
+        } finally {
+            for (final ExecutorService executor : executorService) {
+                executor.shutdown();
             }
+            for (final ExecutorService executor : executorService) {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            }
+            checker.shutdown();
+        }
+        if (checker.getViolations() > 0) {
+            out.println(checker.describeViolations());
+            throw new IllegalStateException(checker.getViolations() + " inconsistent responses: " + checker);
         }
-        System.out.println("PASSED IN " + (System.nanoTime() / 1000000000d - startTime) + " SECONDS");
-        System.out.println("CacheFailures: " + cacheFailures + " " + cache.getStats());
+        final double passedSeconds = (System.nanoTime() - startTime) / 1e9;
+        out.println("PASSED IN " + passedSeconds + " SECONDS");
+        final long puts = requests.stream().filter(request -> request.getType().equals(RType.PUT)).count();
+        out.println("Puts: " + puts + " CacheFailures: " + checker.getCacheFailures() + " " + cache.getStats());
+        return new MetricsSnapshot()
+                .gauge("passedSeconds", passedSeconds)
+                .counter("puts", puts)
+                .counter("cacheFailures", checker.getCacheFailures())
+                .include("", cache.getMetrics());
     }
 
-    private static void printTraceAndExit(List<Request> requests, Request request) {
-        System.err.println(requests.stream().filter(r -> r.getKey().equals(request.getKey())).map(r -> {
-            try {
-                return r.getResponse().get();
-            } catch (Exception e) {
-                throw new IllegalStateException();
-            }
-        }).collect(Collectors.toList()));
-        System.exit(0);
+    /**
+     * Appends the row as one line of JSON. Caches export different metrics, so rows are objects rather than
+     * CSV lines sharing one header.
+     */
+    private static void writeResult(MetricsSnapshot row) {
+        try (final PrintWriter writer = new PrintWriter(new FileWriter(RESULTS_FILE, true))) {
+            writer.println(row.toJson());
+        } catch (IOException e) {
+            System.err.println("Failed to write results to " + RESULTS_FILE + ": " + e.getMessage());
+        }
     }
-}
\ No newline at end of file
+}
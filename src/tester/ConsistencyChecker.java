@@ -0,0 +1,222 @@
+package tester;
+
+import cache.CacheException;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Checks that every GET returns the value of the last PUT issued before it, as responses complete.
+ * Each key keeps the value its resolved operations left behind, and a window of the operations issued since,
+ * in issue order. Responses may complete in any order, and each one resolves the window from its head for as long
+ * as the operation at the head has completed, so every GET is checked against exactly the PUTs issued before it.
+ * Memory is bounded by the number of keys and of operations in flight, and not by the length of the run.
+ * Operations of a key must be reported in the order they were issued to the cache, from one thread at a time.
+ * Operations that fail with a CacheException are allowed, and PUTs that fail leave the value unchanged.
+ */
+public class ConsistencyChecker {
+    private static final int MAX_REPORTED_VIOLATIONS = 10;
+
+    private final Map<String, KeyState> keys = new ConcurrentHashMap<>();
+    // Bounds the operations in flight when senders reserve slots, or null if they are unbounded
+    private final Semaphore inFlight;
+    private final AtomicLong outstanding = new AtomicLong();
+    private final LongAdder checkedGets = new LongAdder(),
+            checkedPuts = new LongAdder(),
+            cacheFailures = new LongAdder(),
+            violations = new LongAdder();
+    private final AtomicLong largestWindow = new AtomicLong();
+    private final List<String> reportedViolations = Collections.synchronizedList(new ArrayList<>());
+    // Waits on responses that cannot notify on completion
+    private final ExecutorService completions = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "consistency-checker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ConsistencyChecker() {
+        this(0);
+    }
+
+    /**
+     * @param maxInFlight The number of operations senders may have reserved and not yet resolved, or 0 for no limit.
+     */
+    public ConsistencyChecker(int maxInFlight) {
+        this.inFlight = maxInFlight > 0 ? new Semaphore(maxInFlight) : null;
+    }
+
+    /**
+     * Blocks until fewer than the maximum number of operations are in flight, and takes a slot for the next one,
+     * which is given back when it resolves. Senders call it before handing an operation to the thread that issues
+     * it, so that operations waiting to be issued count as well.
+     */
+    public void reserve() throws InterruptedException {
+        if (inFlight != null) {
+            inFlight.acquire();
+        }
+    }
+
+    public void onGet(String key, Future<String> response) {
+        track(key, new Operation(true, null), response);
+    }
+
+    public void onPut(String key, String value, Future<Void> response) {
+        track(key, new Operation(false, value), response);
+    }
+
+    private void track(String key, Operation operation, Future<?> response) {
+        outstanding.incrementAndGet();
+        final KeyState state = keys.computeIfAbsent(key, __ -> new KeyState());
+        synchronized (state) {
+            operation.sequence = state.issued++;
+            state.window.addLast(operation);
+            if (state.window.size() > largestWindow.get()) {
+                largestWindow.accumulateAndGet(state.window.size(), Math::max);
+            }
+        }
+        if (response instanceof CompletableFuture) {
+            ((CompletableFuture<?>) response).whenComplete((result, failure) -> complete(key, state, operation, result, failure));
+        } else {
+            completions.execute(() -> {
+                try {
+                    complete(key, state, operation, response.get(), null);
+                } catch (Throwable e) {
+                    complete(key, state, operation, null, e);
+                }
+            });
+        }
+    }
+
+    private void complete(String key, KeyState state, Operation operation, Object result, Throwable failure) {
+        synchronized (state) {
+            operation.result = result;
+            operation.failure = unwrap(failure);
+            operation.completed = true;
+            while (!state.window.isEmpty() && state.window.peekFirst().completed) {
+                resolve(key, state, state.window.pollFirst());
+            }
+        }
+    }
+
+    /**
+     * Applies the operation at the head of the key's window to the value its earlier operations left behind.
+     */
+    private void resolve(String key, KeyState state, Operation operation) {
+        if (operation.failure instanceof CacheException) {
+            cacheFailures.increment();
+        } else if (operation.failure != null) {
+            violation("Failed to " + (operation.get ? "GET" : "PUT") + " key: " + key + " #" + operation.sequence
+                    + ": " + operation.failure);
+        } else if (operation.get) {
+            checkedGets.increment();
+            if (!Objects.equals(state.value, operation.result)) {
+                violation("Mismatch in response state: " + operation.result + " and expected value:" + state.value
+                        + " for key: " + key + " GET #" + operation.sequence
+                        + " last PUT #" + state.valueSequence
+                        + " still in flight: " + state.window.size());
+            }
+        } else {
+            checkedPuts.increment();
+            state.value = operation.value;
+            state.valueSequence = operation.sequence;
+        }
+        if (inFlight != null) {
+            inFlight.release();
+        }
+        outstanding.decrementAndGet();
+    }
+
+    private void violation(String message) {
+        violations.increment();
+        if (reportedViolations.size() < MAX_REPORTED_VIOLATIONS) {
+            reportedViolations.add(message);
+        }
+    }
+
+    private static Throwable unwrap(Throwable failure) {
+        while ((failure instanceof CompletionException || failure instanceof ExecutionException) && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        return failure;
+    }
+
+    /**
+     * Waits until every operation reported so far has resolved, and returns false if some are still in flight.
+     */
+    public boolean awaitResolved(Duration timeout) throws InterruptedException {
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        while (outstanding.get() > 0) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    public long getViolations() {
+        return violations.sum();
+    }
+
+    public long getCacheFailures() {
+        return cacheFailures.sum();
+    }
+
+    public long getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * The first violations found, one per line.
+     */
+    public String describeViolations() {
+        synchronized (reportedViolations) {
+            return String.join("\n", reportedViolations);
+        }
+    }
+
+    public void shutdown() {
+        completions.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "checkedGets: " + checkedGets.sum()
+                + " checkedPuts: " + checkedPuts.sum()
+                + " cacheFailures: " + cacheFailures.sum()
+                + " violations: " + violations.sum()
+                + " outstanding: " + outstanding.get()
+                + " keys: " + keys.size()
+                + " largestWindow: " + largestWindow.get();
+    }
+
+    private static class KeyState {
+        private final ArrayDeque<Operation> window = new ArrayDeque<>();
+        private long issued;
+        // Left behind by the resolved operations, and the sequence of the PUT that wrote it
+        private String value;
+        private long valueSequence = -1;
+    }
+
+    private static class Operation {
+        private final boolean get;
+        private final String value;
+        private long sequence;
+        private boolean completed;
+        private Object result;
+        private Throwable failure;
+
+        private Operation(boolean get, String value) {
+            this.get = get;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package tester;
+
+import cache.CacheInterface;
+import cache.ExecutionModel;
+import models.LatencyHistogram;
+import models.MetricsSnapshot;
+import tester.models.Request;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs the cells of a test matrix in parallel, within a budget of cores.
+ * Each cell builds its own cache and database when it starts, runs on a private copy of its requests, and shuts
+ * its cache down before its slot is given to the next cell, so cells share nothing but the machine. The output of
+ * a cell is buffered and printed in one piece when it completes, and a report aggregated over every cell is
+ * returned at the end.
+ * Threads cannot be pinned to cores from the JVM. The default budget is the number of processors the JVM may
+ * use, which follows the affinity mask of the process, so running under taskset confines the whole matrix.
+ */
+public class MatrixRunner {
+    private final int coreBudget;
+    private final int parallelism;
+
+    /**
+     * @param coreBudget   The number of cores the matrix may use.
+     * @param cellsPerCore The number of cells run at once on each core. Cells mostly wait on their simulated
+     *                     database, so more than one per core shortens the run at the cost of noisier timings.
+     */
+    public MatrixRunner(int coreBudget, int cellsPerCore) {
+        this.coreBudget = coreBudget;
+        this.parallelism = Math.max(1, coreBudget * cellsPerCore);
+    }
+
+    public MatrixRunner() {
+        this(Runtime.getRuntime().availableProcessors(), 1);
+    }
+
+    /**
+     * Tests a cache with the requests of a cell, printing progress to the stream, and returns its metrics.
+     * Throws if the cache returned a wrong value or did not complete in time.
+     */
+    public interface Check {
+        MetricsSnapshot run(CacheInterface cache, List<Request> requests, ExecutionModel executionModel, PrintStream out) throws Exception;
+    }
+
+    public static class Cell {
+        private final MetricsSnapshot configuration;
+        private final Supplier<CacheInterface> cacheFactory;
+        private final List<Request> requests;
+        private final ExecutionModel executionModel;
+
+        /**
+         * @param configuration Labels describing the cell, to which the name of the cache is added.
+         * @param cacheFactory  Builds the cache and its database, only once the cell starts.
+         * @param requests      The requests of the cell, which may be shared with other cells as each runs on a copy.
+         */
+        public Cell(MetricsSnapshot configuration, Supplier<CacheInterface> cacheFactory, List<Request> requests, ExecutionModel executionModel) {
+            this.configuration = configuration;
+            this.cacheFactory = cacheFactory;
+            this.requests = requests;
+            this.executionModel = executionModel;
+        }
+    }
+
+    /**
+     * Runs every cell and hands the row of each to the consumer as it completes, one at a time.
+     * Rows of failed cells hold their labels and a result of FAILED.
+     */
+    public Report run(List<Cell> cells, Check check, Consumer<MetricsSnapshot> rows) throws InterruptedException {
+        final Report report = new Report(cells.size());
+        final long startTime = System.nanoTime();
+        final int threadsBefore = Thread.activeCount();
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ExecutorService runners = Executors.newFixedThreadPool(parallelism, runnable -> {
+            final Thread thread = new Thread(runnable, "matrix-cell-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (final Cell cell : cells) {
+            runners.execute(() -> {
+                final MetricsSnapshot row = runCell(cell, check);
+                synchronized (report) {
+                    report.add(row);
+                    rows.accept(row);
+                }
+            });
+        }
+        runners.shutdown();
+        runners.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        report.wallSeconds = (System.nanoTime() - startTime) / 1e9;
+        report.threadsLeft = Thread.activeCount() - threadsBefore;
+        return report;
+    }
+
+    private MetricsSnapshot runCell(Cell cell, Check check) {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final PrintStream out = new PrintStream(buffer, true);
+        final List<Request> requests = new ArrayList<>(cell.requests.size());
+        for (final Request request : cell.requests) {
+            requests.add(new Request(request));
+        }
+        MetricsSnapshot row = new MetricsSnapshot();
+        CacheInterface cache = null;
+        try {
+            cache = cell.cacheFactory.get();
+            row.label("cache", cache.getName()).include("", cell.configuration);
+            out.println("Configuration: " + describe(row));
+            final MetricsSnapshot metrics = check.run(cache, requests, cell.executionModel, out);
+            row.label("result", "PASSED").include("", metrics);
+        } catch (Throwable e) {
+            if (cache == null) {
+                row.include("", cell.configuration);
+                out.println("Configuration: " + describe(row));
+            }
+            row.label("result", "FAILED");
+            e.printStackTrace(out);
+        } finally {
+            if (cache != null) {
+                cache.shutdown();
+            }
+        }
+        synchronized (System.out) {
+            System.out.print(buffer.toString());
+        }
+        return row;
+    }
+
+    private static String describe(MetricsSnapshot row) {
+        final StringBuilder description = new StringBuilder();
+        row.getLabels().forEach((name, value) -> description
+                .append(description.length() == 0 ? "" : " + ")
+                .append(name).append(": ").append(value));
+        return description.toString();
+    }
+
+    /**
+     * The outcome of every cell, aggregated by cache.
+     */
+    public class Report {
+        private final int cells;
+        private final Map<String, CacheSummary> caches = new TreeMap<>();
+        private int failed;
+        private double wallSeconds;
+        private int threadsLeft;
+
+        private Report(int cells) {
+            this.cells = cells;
+        }
+
+        private void add(MetricsSnapshot row) {
+            final String cache = row.getLabels().getOrDefault("cache", "unknown");
+            final boolean passed = "PASSED".equals(row.getLabels().get("result"));
+            if (!passed) {
+                failed++;
+            }
+            caches.computeIfAbsent(cache, __ -> new CacheSummary()).add(row, passed);
+        }
+
+        public boolean hasFailures() {
+            return failed > 0;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder report = new StringBuilder()
+                    .append("cells: ").append(cells)
+                    .append(" failed: ").append(failed)
+                    .append(" coreBudget: ").append(coreBudget)
+                    .append(" parallelism: ").append(parallelism)
+                    .append(" wallSeconds: ").append(String.format(Locale.ROOT, "%.1f", wallSeconds))
+                    .append(" threadsLeft: ").append(threadsLeft);
+            caches.forEach((cache, summary) -> report.append("\n").append(cache).append(": ").append(summary));
+            return report.toString();
+        }
+    }
+
+    private static class CacheSummary {
+        private int cells, failed;
+        private double seconds, hitRatio;
+        private int hitRatioCells;
+        private long getMissP99Max;
+
+        private void add(MetricsSnapshot row, boolean passed) {
+            cells++;
+            if (!passed) {
+                failed++;
+                return;
+            }
+            seconds += row.getGauges().getOrDefault("passedSeconds", 0.0);
+            final Double ratio = row.getGauges().get("hitRatio");
+            if (ratio != null) {
+                hitRatio += ratio;
+                hitRatioCells++;
+            }
+            final LatencyHistogram.Snapshot getMiss = row.getLatencies().get("getMiss");
+            if (getMiss != null) {
+                getMissP99Max = Math.max(getMissP99Max, getMiss.p99);
+            }
+        }
+
+        @Override
+        public String toString() {
+            final int passed = cells - failed;
+            return "cells: " + cells
+                    + " failed: " + failed
+                    + " avgSeconds: " + String.format(Locale.ROOT, "%.3f", passed == 0 ? 0 : seconds / passed)
+                    + " avgHitRatio: " + (hitRatioCells == 0 ? "-" : String.format(Locale.ROOT, "%.3f", hitRatio / hitRatioCells))
+                    + " maxGetMissP99Micros: " + getMissP99Max / 1000;
+        }
+    }
+}
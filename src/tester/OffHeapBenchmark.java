@@ -0,0 +1,135 @@
+package tester;
+
+import cache.implementations.LRUCache;
+import database.DatabaseInterface;
+import models.MetricsSnapshot;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the heap and the garbage collection work of an LRUCache holding its values on and off the heap.
+ * Values are generated by the database on every read, so that the cache holds the only copies.
+ * Usage: OffHeapBenchmark [entries] [valueSize] [reads]
+ */
+public class OffHeapBenchmark {
+    private static final int BATCH = 1000;
+
+    public static void main(String[] args) throws Exception {
+        final int entries = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        final int valueSize = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+        final int reads = args.length > 2 ? Integer.parseInt(args[2]) : entries * 10;
+        final List<String> keys = new ArrayList<>();
+        for (int i = 0; i < entries; i++) {
+            keys.add("key-" + i);
+        }
+        for (final boolean offHeap : new boolean[]{false, true}) {
+            final LRUCache cache = LRUCache.builder(offHeap ? "Off-heap LRU" : "On-heap LRU", entries, new GeneratingDatabase(valueSize))
+                    .requestCollapsing(true).nonBlocking(true).offHeap(offHeap).build();
+            final long heapBefore = usedHeapAfterGc();
+            for (int i = 0; i < entries; i += BATCH) {
+                cache.getAll(keys.subList(i, Math.min(i + BATCH, entries))).get(10, TimeUnit.SECONDS);
+            }
+            final long heapAfterFill = usedHeapAfterGc();
+            final long collectionsBefore = collectionCount(), collectionMillisBefore = collectionMillis();
+            final long startTime = System.nanoTime();
+            for (int i = 0; i < reads; i++) {
+                cache.get(keys.get(ThreadLocalRandom.current().nextInt(entries))).get(10, TimeUnit.SECONDS);
+            }
+            final long readNanos = System.nanoTime() - startTime;
+            System.out.println("Configuration: " + cache.getName()
+                    + " + entries: " + entries
+                    + " + valueSize: " + valueSize
+                    + " + reads: " + reads);
+            System.out.println("heapGrowthMB: " + (heapAfterFill - heapBefore) / (1024 * 1024)
+                    + " gcCount: " + (collectionCount() - collectionsBefore)
+                    + " gcMillis: " + (collectionMillis() - collectionMillisBefore)
+                    + " readNanosPerOp: " + readNanos / reads);
+            System.out.println(cache.getStats());
+            cache.shutdown();
+        }
+        System.exit(0);
+    }
+
+    private static long usedHeapAfterGc() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long collectionCount() {
+        long count = 0;
+        for (final GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += collector.getCollectionCount();
+        }
+        return count;
+    }
+
+    private static long collectionMillis() {
+        long millis = 0;
+        for (final GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += collector.getCollectionTime();
+        }
+        return millis;
+    }
+
+    /**
+     * A database that derives every value from its key instead of storing it, and answers immediately.
+     */
+    private static class GeneratingDatabase implements DatabaseInterface {
+        private final int valueSize;
+
+        private GeneratingDatabase(int valueSize) {
+            this.valueSize = valueSize;
+        }
+
+        private String valueOf(String key) {
+            final StringBuilder value = new StringBuilder(valueSize).append(key);
+            while (value.length() < valueSize) {
+                value.append('x');
+            }
+            return value.toString();
+        }
+
+        @Override
+        public CompletableFuture<String> get(String key) {
+            return CompletableFuture.completedFuture(valueOf(key));
+        }
+
+        @Override
+        public CompletableFuture<Void> set(String key, String value) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Map<String, String>> getAll(Collection<String> keys) {
+            final Map<String, String> values = new HashMap<>();
+            for (final String key : keys) {
+                values.put(key, valueOf(key));
+            }
+            return CompletableFuture.completedFuture(values);
+        }
+
+        @Override
+        public CompletableFuture<Void> setAll(Map<String, String> entries) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public String getStats() {
+            return "";
+        }
+
+        @Override
+        public MetricsSnapshot getMetrics() {
+            return new MetricsSnapshot();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
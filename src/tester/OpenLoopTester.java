@@ -0,0 +1,73 @@
+package tester;
+
+import cache.CacheInterface;
+import cache.implementations.LRUCache;
+import database.Database;
+import database.LatencyModel;
+import tester.load.OpenLoopDriver;
+import tester.models.Request;
+import tester.order.RandomOrganizer;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Finds the throughput knee of each cache configuration: the highest rate it serves before it falls behind or
+ * its 99th percentile latency leaves the objective. Rates double from a starting rate until the cache saturates.
+ * Usage: OpenLoopTester [stepSeconds] [p99ObjectiveMillis]
+ */
+public class OpenLoopTester {
+    private static final int KEY_SPACE = 1000, CACHE_SIZE = 500;
+    private static final double START_QPS = 500, MAX_QPS = 256_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        final int stepSeconds = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        final Duration p99Objective = Duration.ofMillis(args.length > 1 ? Long.parseLong(args[1]) : 50);
+        final RequestGenerator generator = new RequestGenerator(0.1);
+        final Map<String, Supplier<CacheInterface>> configurations = new LinkedHashMap<>();
+        configurations.put("Concurrent Request Collapsing", () ->
+                LRUCache.builder("Concurrent Request Collapsing", CACHE_SIZE, newDatabase())
+                        .dbThreadPool(16).requestCollapsing(true).build());
+        configurations.put("Non-blocking Request Collapsing", () ->
+                LRUCache.builder("Non-blocking Request Collapsing", CACHE_SIZE, newDatabase())
+                        .requestCollapsing(true).nonBlocking(true).build());
+        configurations.put("Non-blocking Write-behind Request Collapsing", () ->
+                LRUCache.builder("Non-blocking Write-behind Request Collapsing", CACHE_SIZE, newDatabase())
+                        .requestCollapsing(true).nonBlocking(true).writeBehind(KEY_SPACE / 3, Duration.ofMillis(5)).build());
+        for (final Map.Entry<String, Supplier<CacheInterface>> configuration : configurations.entrySet()) {
+            System.out.println("Configuration: " + configuration.getKey()
+                    + " + keySpace: " + KEY_SPACE
+                    + " + cacheSize: " + CACHE_SIZE
+                    + " + writeProbability: " + generator.getWriteProbability()
+                    + " + p99Objective: " + p99Objective.toMillis() + "ms");
+            final CacheInterface cache = configuration.getValue().get();
+            final OpenLoopDriver driver = new OpenLoopDriver(cache);
+            double knee = 0;
+            boolean saturated = false;
+            for (double qps = START_QPS; qps <= MAX_QPS; qps *= 2) {
+                final int requestsPerKey = (int) Math.ceil(qps * stepSeconds / KEY_SPACE);
+                final List<Request> requests = new RandomOrganizer()
+                        .setOrder(KEY_SPACE, requestsPerKey, generator.setupRequests(KEY_SPACE, requestsPerKey));
+                final OpenLoopDriver.StepResult result = driver.run(requests, qps, Duration.ofSeconds(10));
+                System.out.println(result);
+                if (result.isSaturated(p99Objective)) {
+                    saturated = true;
+                    break;
+                }
+                knee = qps;
+            }
+            System.out.println("Knee: " + (saturated ? "" : "above ") + Math.round(knee) + " QPS");
+            System.out.println(cache.getStats());
+            driver.shutdown();
+            cache.shutdown();
+        }
+        System.exit(0);
+    }
+
+    private static Database newDatabase() {
+        return new Database(5, 0.01, LatencyModel.fixed(Duration.ofMillis(1)), Database.UNBOUNDED_WORKERS);
+    }
+}
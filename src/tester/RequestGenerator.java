@@ -2,16 +2,30 @@ package tester;
 
 import tester.models.RType;
 import tester.models.Request;
+import tester.workload.Workload;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class RequestGenerator {
     private final double writeProbability;
+    // Values are bare UUIDs unless a size range is given
+    private final int minValueSize, maxValueSize;
 
     public RequestGenerator(double writeProbability) {
+        this(writeProbability, 0, 0);
+    }
+
+    /**
+     * Generates values between the given sizes, in characters, spread evenly over orders of magnitude.
+     */
+    public RequestGenerator(double writeProbability, int minValueSize, int maxValueSize) {
         this.writeProbability = writeProbability;
+        this.minValueSize = minValueSize;
+        this.maxValueSize = maxValueSize;
     }
 
     public List<Request>[] setupRequests(int keySpace, int requestsPerKey) {
@@ -19,7 +33,7 @@ public class RequestGenerator {
         for (int i = 0; i < requestMap.length; i++) {
             requestMap[i] = new ArrayList<>();
             final String key = UUID.randomUUID().toString();
-            requestMap[i].add(new Request(RType.PUT, key, UUID.randomUUID().toString()));
+            requestMap[i].add(new Request(RType.PUT, key, generateValue()));
             for (int j = 1; j < requestsPerKey; j++) {
                 requestMap[i].add(generateRequest(key, writeProbability));
             }
@@ -27,15 +41,73 @@ public class RequestGenerator {
         return requestMap;
     }
 
+    /**
+     * Generates requests for keys drawn from the workload, named key-0 onwards. Values are made unique by their
+     * position rather than by a UUID, so that millions of keys and requests stay cheap to generate.
+     */
+    public List<Request> generate(Workload workload, int operations) {
+        final List<Request> requests = new ArrayList<>(operations);
+        final Random random = ThreadLocalRandom.current();
+        for (int i = 0; i < operations; i++) {
+            requests.add(next(workload, random, i));
+        }
+        return requests;
+    }
+
+    /**
+     * Generates the request at the given position of a stream over the workload, for runs too long to hold.
+     */
+    public Request next(Workload workload, Random random, long position) {
+        final String key = "key-" + workload.nextKey(random);
+        if (random.nextDouble() < writeProbability) {
+            return new Request(RType.PUT, key, generateValue(key + "#" + position));
+        }
+        return new Request(RType.GET, key);
+    }
+
     private Request generateRequest(String key, double writeProbability) {
         if (Math.random() < writeProbability) {
-            return new Request(RType.PUT, key, UUID.randomUUID().toString());
+            return new Request(RType.PUT, key, generateValue());
         } else {
             return new Request(RType.GET, key);
         }
     }
 
+    private String generateValue() {
+        final String value = UUID.randomUUID().toString();
+        if (maxValueSize <= 0) {
+            return value;
+        }
+        final int size = sampleValueSize();
+        if (size <= value.length()) {
+            return value.substring(0, Math.max(size, 1));
+        }
+        // Keep the UUID, so that every value stays unique to the checker
+        return value + "x".repeat(size - value.length());
+    }
+
+    /**
+     * Pads the value to a size drawn from the range, if any, but never cuts it, as its prefixes need not be unique.
+     */
+    private String generateValue(String value) {
+        if (maxValueSize <= 0) {
+            return value;
+        }
+        final int size = sampleValueSize();
+        return size <= value.length() ? value : value + "x".repeat(size - value.length());
+    }
+
+    private int sampleValueSize() {
+        // Log-uniform, so that small and large values are equally likely per order of magnitude
+        final double logMin = Math.log(Math.max(minValueSize, 1)), logMax = Math.log(maxValueSize);
+        return (int) Math.exp(logMin + ThreadLocalRandom.current().nextDouble() * (logMax - logMin));
+    }
+
     public double getWriteProbability() {
         return writeProbability;
     }
+
+    public String describeValueSizes() {
+        return maxValueSize <= 0 ? "uuid" : minValueSize + "-" + maxValueSize;
+    }
 }
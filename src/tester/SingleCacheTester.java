@@ -35,13 +35,14 @@ public class SingleCacheTester {
                         + " + cacheSize: " + (100.0 / factor));
                 testCache(cache, requests);
                 System.out.println(database.getStats());
+                cache.shutdown();
             }
         }
         System.exit(0);
     }
 
     private static void testCache(Cache cache, List<Request> requests) {
-        final long startTime = System.nanoTime() / 1000000000;
+        final long startTime = System.nanoTime();
         final List<CompletableFuture<Void>> tasks = new ArrayList<>();
         final ExecutorService[] executorService = new ExecutorService[3];
         for (int i = 0; i < executorService.length; i++) {
@@ -70,6 +71,9 @@ public class SingleCacheTester {
             System.err.println("Problem when completing tasks");
             System.exit(0);
         }
+        for (final ExecutorService executor : executorService) {
+            executor.shutdown();
+        }
         int cacheFailures = 0;
         final Map<String, String> currentValue = new HashMap<>();
         for (final Request request : requests) {
@@ -98,7 +102,7 @@ public class SingleCacheTester {
                 }
             }
         }
-        System.out.println("PASSED IN " + (System.nanoTime() / 1000000000d - startTime) + " SECONDS");
+        System.out.println("PASSED IN " + (System.nanoTime() - startTime) / 1e9 + " SECONDS");
     }
 
     private static void printTraceAndExit(List<Request> requests, Request request) {
@@ -0,0 +1,144 @@
+package tester;
+
+import cache.CacheInterface;
+import cache.ExecutionModel;
+import cache.implementations.LRUCache;
+import database.Database;
+import database.LatencyModel;
+import tester.models.RType;
+import tester.models.Request;
+import tester.workload.Workload;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs long streams of requests against each cache configuration, checking every response as it completes.
+ * Requests are generated as they are sent and forgotten once checked, and at most maxInFlight are outstanding,
+ * so memory stays flat however many operations are run.
+ * Usage: SoakTester [operations] [keySpace] [writeProbability] [maxInFlight] [uniform|zipfian|hotspot|scan|shifting]
+ */
+public class SoakTester {
+    private static final int SENDERS = 8;
+    private static final long PROGRESS_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    public static void main(String[] args) throws InterruptedException {
+        final long operations = args.length > 0 ? Long.parseLong(args[0]) : 10_000_000;
+        final int keySpace = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        final double writeProbability = args.length > 2 ? Double.parseDouble(args[2]) : 0.1;
+        final int maxInFlight = args.length > 3 ? Integer.parseInt(args[3]) : 10_000;
+        final String workloadName = args.length > 4 ? args[4] : "zipfian";
+        final int cacheSize = keySpace / 4;
+        final Map<String, Supplier<CacheInterface>> configurations = new LinkedHashMap<>();
+        configurations.put("Concurrent Request Collapsing", () ->
+                LRUCache.builder("Concurrent Request Collapsing", cacheSize, newDatabase())
+                        .dbThreadPool(16).requestCollapsing(true).build());
+        configurations.put("Non-blocking Request Collapsing", () ->
+                LRUCache.builder("Non-blocking Request Collapsing", cacheSize, newDatabase())
+                        .requestCollapsing(true).nonBlocking(true).build());
+        configurations.put("Non-blocking Write-behind Request Collapsing", () ->
+                LRUCache.builder("Non-blocking Write-behind Request Collapsing", cacheSize, newDatabase())
+                        .requestCollapsing(true).nonBlocking(true).writeBehind(64, Duration.ofMillis(5)).build());
+        boolean failed = false;
+        for (final Map.Entry<String, Supplier<CacheInterface>> configuration : configurations.entrySet()) {
+            System.out.println("Configuration: " + configuration.getKey()
+                    + " + operations: " + operations
+                    + " + keySpace: " + keySpace
+                    + " + cacheSize: " + cacheSize
+                    + " + writeProbability: " + writeProbability
+                    + " + maxInFlight: " + maxInFlight
+                    + " + workload: " + workloadName);
+            final CacheInterface cache = configuration.getValue().get();
+            try {
+                failed |= !soak(cache, operations, newWorkload(workloadName, keySpace), new RequestGenerator(writeProbability), maxInFlight);
+            } finally {
+                cache.shutdown();
+            }
+        }
+        System.exit(failed ? 1 : 0);
+    }
+
+    private static Database newDatabase() {
+        return new Database(5, 0.01, LatencyModel.fixed(Duration.ofMillis(1)), Database.UNBOUNDED_WORKERS);
+    }
+
+    private static Workload newWorkload(String name, int keySpace) {
+        switch (name) {
+            case "uniform":
+                return Workload.uniform(keySpace);
+            case "zipfian":
+                return Workload.zipfian(keySpace, 0.99);
+            case "hotspot":
+                return Workload.hotspot(keySpace, 0.2, 0.8);
+            case "scan":
+                return Workload.scan(keySpace, 0.1, Workload.zipfian(keySpace, 0.99));
+            case "shifting":
+                return Workload.shifting(keySpace, Math.max(1, keySpace / 10), 100_000);
+            default:
+                throw new IllegalArgumentException("Unknown workload: " + name);
+        }
+    }
+
+    private static boolean soak(CacheInterface cache, long operations, Workload workload, RequestGenerator generator, int maxInFlight) throws InterruptedException {
+        final ConsistencyChecker checker = new ConsistencyChecker(maxInFlight);
+        final ExecutorService[] senders = new ExecutorService[SENDERS];
+        for (int i = 0; i < senders.length; i++) {
+            senders[i] = ExecutionModel.PLATFORM_THREADS.newSerialExecutor();
+        }
+        final long startTime = System.nanoTime();
+        long lastProgress = startTime;
+        long sent = 0;
+        for (long i = 0; i < operations && checker.getViolations() == 0; i++, sent++) {
+            // Values are unique, so that a stale read never matches by accident
+            final Request request = generator.next(workload, ThreadLocalRandom.current(), i);
+            final String key = request.getKey();
+            checker.reserve();
+            // Operations on a key are issued from one serial sender, so the checker sees them in issue order
+            senders[Math.abs(key.hashCode() % senders.length)].execute(() -> {
+                if (request.getType().equals(RType.GET)) {
+                    checker.onGet(key, cache.get(key));
+                } else {
+                    checker.onPut(key, request.getValue(), cache.put(key, request.getValue()));
+                }
+            });
+            if ((i & 0xFFF) == 0 && System.nanoTime() - lastProgress > PROGRESS_NANOS) {
+                lastProgress = System.nanoTime();
+                printProgress(i, startTime, checker);
+            }
+        }
+        for (final ExecutorService sender : senders) {
+            sender.shutdown();
+        }
+        for (final ExecutorService sender : senders) {
+            sender.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        final boolean resolved = checker.awaitResolved(Duration.ofMinutes(1));
+        checker.shutdown();
+        printProgress(sent, startTime, checker);
+        if (checker.getViolations() > 0) {
+            System.out.println("FAILED\n" + checker.describeViolations());
+            return false;
+        }
+        if (!resolved) {
+            System.out.println("FAILED " + checker.getOutstanding() + " requests did not complete");
+            return false;
+        }
+        System.out.println("PASSED IN " + (System.nanoTime() - startTime) / 1e9 + " SECONDS");
+        System.out.println(cache.getStats());
+        return true;
+    }
+
+    private static void printProgress(long sent, long startTime, ConsistencyChecker checker) {
+        final double seconds = (System.nanoTime() - startTime) / 1e9;
+        final Runtime runtime = Runtime.getRuntime();
+        System.out.println("sent: " + sent
+                + " opsPerSecond: " + (long) (sent / Math.max(seconds, 1e-9))
+                + " usedHeapMB: " + (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024)
+                + " " + checker);
+    }
+}
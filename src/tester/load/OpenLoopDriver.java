@@ -0,0 +1,155 @@
+package tester.load;
+
+import cache.CacheException;
+import cache.CacheInterface;
+import models.LatencyHistogram;
+import tester.models.RType;
+import tester.models.Request;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends requests to a cache on a fixed schedule at a target rate, whether or not earlier ones have completed,
+ * and measures each from the time it was meant to be sent.
+ * A closed loop that waits on every response sends less exactly when the cache is slow, and never counts the
+ * wait of the requests it held back. Measuring from the schedule puts that wait back into the latencies.
+ */
+public class OpenLoopDriver {
+    // Parking is too coarse for the last stretch before a send, so spin through it
+    private static final long SPIN_NANOS = 50_000;
+
+    private final CacheInterface cache;
+    // Waits on caches whose futures cannot notify on completion
+    private final ExecutorService completions = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "open-loop-completion");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public OpenLoopDriver(CacheInterface cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Sends the requests at the target rate and waits up to the timeout, after the last send, for them to complete.
+     */
+    public StepResult run(List<Request> requests, double targetQps, Duration timeout) throws InterruptedException {
+        final long interval = (long) (TimeUnit.SECONDS.toNanos(1) / targetQps);
+        final LatencyHistogram latency = new LatencyHistogram(),
+                serviceTime = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        final AtomicLong lastCompletion = new AtomicLong();
+        final CountDownLatch completed = new CountDownLatch(requests.size());
+        final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1);
+        for (int i = 0; i < requests.size(); i++) {
+            final Request request = requests.get(i);
+            final long intended = start + i * interval;
+            final long sent = awaitSendTime(intended);
+            send(request).whenComplete((__, e) -> {
+                final long end = System.nanoTime();
+                latency.record(end - intended);
+                serviceTime.record(end - sent);
+                if (e != null) {
+                    errors.increment();
+                    if (!(e instanceof CacheException) && !(e.getCause() instanceof CacheException)) {
+                        System.err.println("Failed to " + request.getType() + " key: " + request.getKey());
+                        e.printStackTrace();
+                    }
+                }
+                lastCompletion.accumulateAndGet(end, Math::max);
+                completed.countDown();
+            });
+        }
+        completed.await(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        final long end = completed.getCount() == 0 ? lastCompletion.get() : System.nanoTime();
+        return new StepResult(targetQps, (requests.size() - completed.getCount()) / ((end - start) / 1e9),
+                latency, serviceTime, errors.sum(), completed.getCount());
+    }
+
+    /**
+     * Waits until the time a request is meant to be sent, parking through most of the wait and spinning through the
+     * rest, and returns the time it was sent at. Sending on a schedule computed up front, rather than sleeping
+     * between sends, keeps the rate from drifting with the oversleep of each wait.
+     */
+    public static long awaitSendTime(long intended) {
+        long now;
+        while ((now = System.nanoTime()) - intended < 0) {
+            if (intended - now > SPIN_NANOS) {
+                LockSupport.parkNanos(intended - now - SPIN_NANOS);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+        return now;
+    }
+
+    private CompletableFuture<?> send(Request request) {
+        final Future<?> response = request.getType().equals(RType.GET)
+                ? cache.get(request.getKey())
+                : cache.put(request.getKey(), request.getValue());
+        if (response instanceof CompletableFuture) {
+            return (CompletableFuture<?>) response;
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return response.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            } catch (ExecutionException e) {
+                throw new CompletionException(e.getCause());
+            }
+        }, completions);
+    }
+
+    public void shutdown() {
+        completions.shutdown();
+    }
+
+    public static class StepResult {
+        public final double targetQps;
+        public final double achievedQps;
+        // From the time each request was meant to be sent, and from the time it actually was
+        public final LatencyHistogram latency;
+        public final LatencyHistogram serviceTime;
+        public final long errors;
+        public final long timeouts;
+
+        StepResult(double targetQps, double achievedQps, LatencyHistogram latency, LatencyHistogram serviceTime,
+                   long errors, long timeouts) {
+            this.targetQps = targetQps;
+            this.achievedQps = achievedQps;
+            this.latency = latency;
+            this.serviceTime = serviceTime;
+            this.errors = errors;
+            this.timeouts = timeouts;
+        }
+
+        /**
+         * Whether the cache kept up with the rate: nothing timed out, it completed close to the target rate,
+         * and the 99th percentile stayed within the objective.
+         */
+        public boolean isSaturated(Duration p99Objective) {
+            return timeouts > 0 || achievedQps < 0.9 * targetQps || latency.percentile(0.99) > p99Objective.toNanos();
+        }
+
+        @Override
+        public String toString() {
+            return "targetQps: " + Math.round(targetQps)
+                    + " achievedQps: " + Math.round(achievedQps)
+                    + " p50Micros: " + latency.percentile(0.5) / 1000
+                    + " p90Micros: " + latency.percentile(0.9) / 1000
+                    + " p99Micros: " + latency.percentile(0.99) / 1000
+                    + " p999Micros: " + latency.percentile(0.999) / 1000
+                    + " maxMicros: " + latency.max() / 1000
+                    + " serviceP99Micros: " + serviceTime.percentile(0.99) / 1000
+                    + " errors: " + errors
+                    + " timeouts: " + timeouts;
+        }
+    }
+}
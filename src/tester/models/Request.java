@@ -1,20 +1,23 @@
 package tester.models;
 
-import java.util.UUID;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Request {
+    // Cheaper than a UUID per request, which dominated generating millions of them
+    private static final AtomicLong ids = new AtomicLong();
+
     final RType type;
     final String key;
     String value;
     Response response;
-    String id;
+    long id;
 
     public Request(RType type, String key, String value) {
         this.type = type;
         this.key = key;
         this.value = value;
-        this.id = UUID.randomUUID().toString();
+        this.id = ids.incrementAndGet();
         response = new Response();
     }
 
@@ -22,13 +25,24 @@ public class Request {
         this(type, key, null);
     }
 
+    /**
+     * Copies the request without its response, so that the same requests can be sent to several caches at once.
+     */
+    public Request(Request request) {
+        this.type = request.type;
+        this.key = request.key;
+        this.value = request.value;
+        this.id = request.id;
+        response = new Response();
+    }
+
     @Override
     public String toString() {
         return "{" +
                 "type=" + type +
                 ", key='" + key + '\'' +
                 ", value='" + value + '\'' +
-                ", id='" + id + '\'' +
+                ", id=" + id +
                 ", response='" + response.getResult() + '\'' +
                 '}';
     }
@@ -0,0 +1,114 @@
+package tester.workload;
+
+import java.util.Random;
+
+/**
+ * The popularity of keys over time: which key, out of the key space, the next request is for.
+ * Keys are numbered from 0, with the most popular first where popularity is fixed.
+ * Workloads that change over time keep state, and must be sampled from one thread.
+ */
+public interface Workload {
+    int nextKey(Random random);
+
+    /**
+     * Every key is equally likely.
+     */
+    static Workload uniform(int keySpace) {
+        return named("uniform over " + keySpace, random -> random.nextInt(keySpace));
+    }
+
+    /**
+     * The key of rank r is requested in proportion to 1 / r^skew, as in YCSB. A skew of 0.99 sends about
+     * two thirds of the requests to the hottest 1% of a million keys.
+     * Setting up takes time linear in the key space, sampling takes constant time.
+     *
+     * @param skew Between 0, which is uniform, and 1, exclusive.
+     */
+    static Workload zipfian(int keySpace, double skew) {
+        if (skew <= 0 || skew >= 1) {
+            throw new IllegalArgumentException("The skew must be between 0 and 1, exclusive: " + skew);
+        }
+        double zeta = 0;
+        for (int rank = 1; rank <= keySpace; rank++) {
+            zeta += 1 / Math.pow(rank, skew);
+        }
+        final double zetaN = zeta, zeta2 = 1 + 1 / Math.pow(2, skew);
+        final double alpha = 1 / (1 - skew);
+        final double eta = (1 - Math.pow(2.0 / keySpace, 1 - skew)) / (1 - zeta2 / zetaN);
+        final double secondThreshold = 1 + Math.pow(0.5, skew);
+        // Gray et al., Quickly Generating Billion-Record Synthetic Databases
+        return named("zipfian " + skew + " over " + keySpace, random -> {
+            final double u = random.nextDouble();
+            final double uz = u * zetaN;
+            if (uz < 1) {
+                return 0;
+            }
+            if (uz < secondThreshold) {
+                return 1;
+            }
+            return Math.min(keySpace - 1, (int) (keySpace * Math.pow(eta * u - eta + 1, alpha)));
+        });
+    }
+
+    /**
+     * A fraction of the keys takes a fraction of the requests, and the rest share what is left, each set being
+     * uniform within itself. Hot keys of 20% taking 80% of the requests is the usual rule of thumb.
+     */
+    static Workload hotspot(int keySpace, double hotKeyFraction, double hotRequestFraction) {
+        final int hotKeys = Math.max(1, Math.min(keySpace, (int) (keySpace * hotKeyFraction)));
+        final int coldKeys = keySpace - hotKeys;
+        return named("hotspot " + hotKeyFraction + "/" + hotRequestFraction + " over " + keySpace, random ->
+                coldKeys == 0 || random.nextDouble() < hotRequestFraction
+                        ? random.nextInt(hotKeys)
+                        : hotKeys + random.nextInt(coldKeys));
+    }
+
+    /**
+     * A share of the requests walks through the whole key space in order, as a batch job or a range query would,
+     * and the rest follow the hot workload. Scans touch every key once per pass, which is what flushes
+     * recency-based caches of their hot keys.
+     */
+    static Workload scan(int keySpace, double scanShare, Workload hot) {
+        final int[] cursor = new int[1];
+        return named("scan " + scanShare + " over " + keySpace + " with " + hot, random -> {
+            if (random.nextDouble() >= scanShare) {
+                return hot.nextKey(random);
+            }
+            final int key = cursor[0];
+            cursor[0] = key + 1 == keySpace ? 0 : key + 1;
+            return key;
+        });
+    }
+
+    /**
+     * Requests go uniformly to a working set of consecutive keys, which moves on to the next keys after each
+     * period, wrapping around the key space. Keys that were hot stop being requested at once, so a cache must
+     * let go of their history to adapt.
+     */
+    static Workload shifting(int keySpace, int workingSetSize, int shiftEvery) {
+        final int size = Math.max(1, Math.min(keySpace, workingSetSize));
+        // The start of the working set, and the requests left before it moves
+        final int[] state = {0, shiftEvery};
+        return named("shifting " + size + " every " + shiftEvery + " over " + keySpace, random -> {
+            if (state[1]-- == 0) {
+                state[0] = (state[0] + size) % keySpace;
+                state[1] = shiftEvery - 1;
+            }
+            return (state[0] + random.nextInt(size)) % keySpace;
+        });
+    }
+
+    private static Workload named(String name, Workload workload) {
+        return new Workload() {
+            @Override
+            public int nextKey(Random random) {
+                return workload.nextKey(random);
+            }
+
+            @Override
+            public String toString() {
+                return name;
+            }
+        };
+    }
+}
@@ -0,0 +1,87 @@
+package cache.implementations;
+
+import database.DatabaseInterface;
+import models.MetricsSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BufferedLRUCacheTest {
+    @Test
+    void hitCompletesWhileAPutOnTheSameStripeIsInFlight() throws Exception {
+        final HeldWritesDatabase database = new HeldWritesDatabase();
+        // One executor, so that every key shares the stripe of the put
+        final BufferedLRUCache cache = new BufferedLRUCache("", 10, 1, database);
+        try {
+            cache.get("hit").get(1, TimeUnit.SECONDS);
+            cache.get("written").get(1, TimeUnit.SECONDS);
+            final Future<Void> put = cache.put("written", "new");
+            assertFalse(put.isDone());
+
+            final Future<String> hit = cache.get("hit");
+            assertTrue(hit.isDone(), "a hit waited on the put");
+            assertEquals("hit", hit.get());
+
+            // The written key no longer hits its old value, and is read again once the write is done
+            final Future<String> reread = cache.get("written");
+            assertFalse(reread.isDone());
+            database.pendingWrite.complete(null);
+            put.get(1, TimeUnit.SECONDS);
+            assertEquals("new", reread.get(1, TimeUnit.SECONDS));
+        } finally {
+            database.pendingWrite.complete(null);
+            cache.shutdown();
+        }
+    }
+
+    /**
+     * Holds each key's value as its key, until it is written, and holds writes until the test completes them.
+     */
+    private static class HeldWritesDatabase implements DatabaseInterface {
+        private final Map<String, String> values = new ConcurrentHashMap<>();
+        final CompletableFuture<Void> pendingWrite = new CompletableFuture<>();
+
+        @Override
+        public CompletableFuture<String> get(String key) {
+            return CompletableFuture.completedFuture(values.getOrDefault(key, key));
+        }
+
+        @Override
+        public CompletableFuture<Void> set(String key, String value) {
+            return pendingWrite.thenRun(() -> values.put(key, value));
+        }
+
+        @Override
+        public CompletableFuture<Map<String, String>> getAll(Collection<String> keys) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<Void> setAll(Map<String, String> entries) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getStats() {
+            return "";
+        }
+
+        @Override
+        public MetricsSnapshot getMetrics() {
+            return new MetricsSnapshot();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package cache.implementations;
+
+import database.Database;
+import database.DatabaseInterface;
+import database.LatencyModel;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClusterCacheTest {
+    private static final int KEYS = 200;
+
+    @Test
+    void failedHandOffLeavesNoKeysWithTheNodesTakingOver() throws Exception {
+        final Database database = new Database(1000, 0, LatencyModel.fixed(Duration.ZERO), Database.UNBOUNDED_WORKERS);
+        final Map<String, WarmRecordingCache> nodes = new ConcurrentHashMap<>();
+        final ClusterCache cluster = new ClusterCache("", 3, 16, database, (nodeName, nodeDatabase) -> {
+            final WarmRecordingCache node = new WarmRecordingCache(nodeName, nodeDatabase, nodeName.equals("node-1"));
+            nodes.put(nodeName, node);
+            return node;
+        });
+        try {
+            for (int i = 0; i < KEYS; i++) {
+                cluster.put("key-" + i, "old").get(1, TimeUnit.SECONDS);
+                cluster.get("key-" + i).get(1, TimeUnit.SECONDS);
+            }
+            // Changed behind the caches, so that a value handed over reads differently from the database's
+            for (int i = 0; i < KEYS; i++) {
+                database.set("key-" + i, "new").get(1, TimeUnit.SECONDS);
+            }
+
+            assertThrows(IllegalStateException.class, () -> cluster.removeNode("node-2"));
+
+            assertTrue(cluster.getNodeNames().contains("node-2"));
+            int warmedKeys = 0;
+            for (final WarmRecordingCache node : new WarmRecordingCache[]{nodes.get("node-0"), nodes.get("node-1")}) {
+                for (final String key : node.warmedKeys) {
+                    assertEquals("new", node.get(key).get(1, TimeUnit.SECONDS), "kept a key handed over to " + node.getName());
+                    warmedKeys++;
+                }
+            }
+            assertFalse(nodes.get("node-1").warmedKeys.isEmpty());
+            assertTrue(warmedKeys > 0);
+        } finally {
+            cluster.shutdown();
+        }
+    }
+
+    /**
+     * Records the keys it is warmed with, and fails after caching them if asked to.
+     */
+    private static class WarmRecordingCache extends LRUCache {
+        private final Set<String> warmedKeys = ConcurrentHashMap.newKeySet();
+        private final boolean failWarm;
+
+        private WarmRecordingCache(String name, DatabaseInterface database, boolean failWarm) {
+            super(name, KEYS, 1, true, database);
+            this.failWarm = failWarm;
+        }
+
+        @Override
+        public void warm(Map<String, String> values) {
+            warmedKeys.addAll(values.keySet());
+            super.warm(new HashMap<>(values));
+            if (failWarm) {
+                throw new IllegalStateException("Failed to warm " + getName());
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package cache.implementations;
+
+import cache.eviction.EvictionPolicy;
+import database.Database;
+import database.LatencyModel;
+import models.Node;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LRUCacheTest {
+    @Test
+    void loadCompletesWhenThePolicyHasNothingToEvict() throws Exception {
+        final Database database = new Database(1000, 0, LatencyModel.fixed(Duration.ZERO), Database.UNBOUNDED_WORKERS);
+        final LRUCache cache = new LRUCache("", 1, 1, true, new TrackingNothingPolicy(), database);
+        try {
+            cache.get("a").get(1, TimeUnit.SECONDS);
+            // The cache is full, and the policy returns no victim
+            assertEquals(database.get("b").get(1, TimeUnit.SECONDS), cache.get("b").get(1, TimeUnit.SECONDS));
+        } finally {
+            cache.shutdown();
+        }
+    }
+
+    private static class TrackingNothingPolicy implements EvictionPolicy {
+        @Override
+        public void onInsert(Node node) {
+        }
+
+        @Override
+        public void onAccess(Node node) {
+        }
+
+        @Override
+        public void onRemove(Node node) {
+        }
+
+        @Override
+        public Node evict() {
+            return null;
+        }
+    }
+}
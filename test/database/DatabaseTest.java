@@ -0,0 +1,50 @@
+package database;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DatabaseTest {
+    private static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final long FAST_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    // Spreads the deadlines of the slow calls over more than a rotation of the timing wheel
+    private static final long STEP_NANOS = TimeUnit.MICROSECONDS.toNanos(250);
+    private static final int TRIALS = 16;
+
+    @Test
+    void shortCallBehindLongCallCompletesInItsOwnLatency() throws Exception {
+        // Every other call is slow, starting with the first, and each slow call is a little slower than the last
+        final AtomicInteger calls = new AtomicInteger();
+        final Database database = new Database(1000, 0, random -> {
+            final int call = calls.getAndIncrement();
+            return call % 2 == 0 ? SLOW_NANOS + call / 2 * STEP_NANOS : FAST_NANOS;
+        }, Database.UNBOUNDED_WORKERS);
+        try {
+            int late = 0;
+            long worstNanos = 0;
+            for (int i = 0; i < TRIALS; i++) {
+                final CompletableFuture<String> slow = database.get("slow");
+                // Let the dispatcher park until the slow call is due
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(200));
+                final long start = System.nanoTime();
+                database.get("fast").get(1, TimeUnit.SECONDS);
+                final long elapsed = System.nanoTime() - start;
+                worstNanos = Math.max(worstNanos, elapsed);
+                if (elapsed > 2 * FAST_NANOS) {
+                    late++;
+                }
+                slow.get(1, TimeUnit.SECONDS);
+            }
+            // A couple of trials may be late to warming up or scheduling, not to the slow call
+            assertTrue(late <= 2, late + " of " + TRIALS + " 1 ms calls behind a slow call took over 2 ms, "
+                    + "the slowest " + worstNanos / 1000 + " micros");
+        } finally {
+            database.shutdown();
+        }
+    }
+}